@@ -0,0 +1,91 @@
+package com.prigozhaev.benchmark;
+
+import com.prigozhaev.io.PriceCodec;
+import com.prigozhaev.model.Price;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of writing and reading a price history with {@link PriceCodec}
+ * and with the default Java serialization. The encoded sizes are printed on tear down.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"10000"})
+    private int products;
+
+    @Param({"10"})
+    private int pricesPerGroup;
+
+    private ArrayList<Price> prices;
+    private byte[] codecBytes;
+    private byte[] serializedBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        prices = new ArrayList<>(new PriceGenerator(products, pricesPerGroup, 0, 0, 42).getExistingPrices());
+        codecBytes = codecEncode();
+        serializedBytes = serialize();
+    }
+
+    @TearDown(Level.Trial)
+    public void printSizes() {
+        System.out.printf("%n%d prices: codec %d bytes, serialization %d bytes%n",
+                prices.size(), codecBytes.length, serializedBytes.length);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return PriceCodec.encode(prices);
+    }
+
+    @Benchmark
+    public List<Price> codecDecode() throws IOException {
+        return PriceCodec.decode(codecBytes);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(prices);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Price> deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedBytes))) {
+            return (List<Price>) in.readObject();
+        }
+    }
+
+}
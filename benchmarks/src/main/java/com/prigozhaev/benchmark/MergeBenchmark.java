@@ -0,0 +1,122 @@
+package com.prigozhaev.benchmark;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceBatch;
+import com.prigozhaev.model.ProductCodeDictionary;
+import com.prigozhaev.util.BufferedPriceMerger;
+import com.prigozhaev.util.PriceManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of merging an import into a price history.
+ * <p>
+ * The baseline is the original merge, measured by {@link OriginalMergeBenchmark} on the smaller histories.
+ * <p>
+ * Run with {@code -prof gc} to see the bytes allocated per operation.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+
+    private static final int BACKLOG_SIZE = 20;
+
+    @Param({"1000", "10000"})
+    private int products;
+
+    @Param({"10", "100"})
+    private int pricesPerGroup;
+
+    @Param({"0.0", "0.5", "1.0"})
+    private double overlapRatio;
+
+    @Param({"0.0", "0.5", "1.0"})
+    private double equalValueRatio;
+
+    private List<Price> existingPrices;
+    private List<Price> incomingPrices;
+    private List<List<Price>> incomingBacklog;
+    private PriceBatch existingBatch;
+    private PriceBatch incomingBatch;
+    private PriceBatch existingSharedBatch;
+    private PriceBatch incomingSharedBatch;
+    private final BufferedPriceMerger bufferedMerger = new BufferedPriceMerger();
+    private List<Price> bufferedResult;
+
+    @Setup
+    public void setUp() {
+        PriceGenerator generator = new PriceGenerator(products, pricesPerGroup, overlapRatio, equalValueRatio, 42);
+        existingPrices = generator.getExistingPrices();
+        incomingPrices = generator.getIncomingPrices();
+        incomingBacklog = new ArrayList<>(BACKLOG_SIZE);
+        for (int i = 0; i < BACKLOG_SIZE; i++)
+            incomingBacklog.add(incomingPrices.subList(i * incomingPrices.size() / BACKLOG_SIZE,
+                    (i + 1) * incomingPrices.size() / BACKLOG_SIZE));
+        existingBatch = PriceBatch.of(existingPrices);
+        incomingBatch = PriceBatch.of(incomingPrices);
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        existingSharedBatch = PriceBatch.of(existingPrices, dictionary);
+        incomingSharedBatch = PriceBatch.of(incomingPrices, dictionary);
+        bufferedResult = new ArrayList<>(existingPrices.size() + incomingPrices.size());
+    }
+
+    @Benchmark
+    public Collection<Price> merge() {
+        return PriceManager.merge(existingPrices, incomingPrices);
+    }
+
+    @Benchmark
+    public Collection<Price> mergeBacklogSequentially() {
+        Collection<Price> prices = existingPrices;
+        for (List<Price> incomingBatch : incomingBacklog)
+            prices = PriceManager.merge(prices, incomingBatch);
+        return prices;
+    }
+
+    @Benchmark
+    public Collection<Price> mergeAll() {
+        return PriceManager.mergeAll(existingPrices, incomingBacklog);
+    }
+
+    @Benchmark
+    public Collection<Price> parallelMerge() {
+        return PriceManager.parallelMerge(existingPrices, incomingPrices);
+    }
+
+    @Benchmark
+    public PriceBatch mergeBatches() {
+        return PriceManager.mergeBatches(existingBatch, incomingBatch);
+    }
+
+    @Benchmark
+    public PriceBatch mergeBatchesSharedDictionary() {
+        return PriceManager.mergeBatches(existingSharedBatch, incomingSharedBatch);
+    }
+
+    @Benchmark
+    public List<Price> bufferedMerge() {
+        bufferedResult.clear();
+        bufferedMerger.merge(existingPrices, incomingPrices, bufferedResult);
+        return bufferedResult;
+    }
+
+}
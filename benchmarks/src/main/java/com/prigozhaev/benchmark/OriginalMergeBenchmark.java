@@ -0,0 +1,152 @@
+package com.prigozhaev.benchmark;
+
+import com.prigozhaev.model.Price;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput of the merge as it was before the price timeline, the baseline of {@link MergeBenchmark}.
+ * <p>
+ * The original merge scans the whole result for every incoming price, so it runs in {@code O(N × M)}
+ * and only the smallest histories of {@link MergeBenchmark} are measured: one operation on
+ * 1000 products takes seconds. It modifies the incoming prices, so every operation merges
+ * fresh copies of them; copying is linear and does not change the picture.
+ * <p>
+ * Run with {@code -prof gc} to see the bytes allocated per operation.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class OriginalMergeBenchmark {
+
+    @Param({"100", "1000"})
+    private int products;
+
+    @Param({"10"})
+    private int pricesPerGroup;
+
+    @Param({"0.0", "0.5", "1.0"})
+    private double overlapRatio;
+
+    @Param({"0.0", "0.5", "1.0"})
+    private double equalValueRatio;
+
+    private List<Price> existingPrices;
+    private List<Price> incomingPrices;
+
+    @Setup
+    public void setUp() {
+        PriceGenerator generator = new PriceGenerator(products, pricesPerGroup, overlapRatio, equalValueRatio, 42);
+        existingPrices = generator.getExistingPrices();
+        incomingPrices = generator.getIncomingPrices();
+    }
+
+    @Benchmark
+    public Collection<Price> originalMerge() {
+        List<Price> incomingCopies = new ArrayList<>(incomingPrices.size());
+        for (Price price : incomingPrices)
+            incomingCopies.add(new Price(price, price.getBeginMillis(), price.getEndMillis()));
+        return originalMerge(existingPrices, incomingCopies);
+    }
+
+    private static Collection<Price> originalMerge(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+
+        if ((existingPrices == null || existingPrices.isEmpty()) && (incomingPrices == null || incomingPrices.isEmpty()))
+            throw new IllegalArgumentException("Missing valid data for merge");
+
+        if (existingPrices == null || existingPrices.isEmpty())
+            return incomingPrices;
+
+        if (incomingPrices == null || incomingPrices.isEmpty())
+            return existingPrices;
+
+        List<Price> result = new ArrayList<>(existingPrices);
+
+        for (Price incomingPrice : incomingPrices) {
+            List<Price> existingPricesGroup = result.stream()
+                    .filter(existingPrice -> isContain(existingPrice, incomingPrice))
+                    .collect(Collectors.toList());
+            result.removeAll(existingPricesGroup);
+            result.addAll(getPriceListForGroup(existingPricesGroup, incomingPrice));
+        }
+
+        return result;
+    }
+
+    private static Collection<Price> getPriceListForGroup(List<Price> existingPricesGroup, Price incomingPrice) {
+
+        List<Price> groupOfPricesList = new ArrayList<>();
+
+        if (existingPricesGroup.isEmpty()) {
+            groupOfPricesList.add(incomingPrice);
+            return groupOfPricesList;
+        }
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().isInsideIn(existingPrice.getPriceActionPeriod()))
+                .findFirst()
+                .ifPresent(existingPrice -> {
+                    if (incomingPrice.getValue().equals(existingPrice.getValue())) {
+                        incomingPrice.setBegin(existingPrice.getBegin());
+                        incomingPrice.setEnd(existingPrice.getEnd());
+                    } else {
+                        groupOfPricesList.add(new Price(existingPrice, existingPrice.getBegin(), incomingPrice.getBegin()));
+                        groupOfPricesList.add(new Price(existingPrice, incomingPrice.getEnd(), existingPrice.getEnd()));
+                    }
+                });
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().haveIntersectionOnTheRightWith(existingPrice.getPriceActionPeriod()))
+                .findFirst()
+                .ifPresent(existingPrice -> {
+                    if (incomingPrice.getValue().equals(existingPrice.getValue()))
+                        incomingPrice.setEnd(existingPrice.getEnd());
+                    else
+                        groupOfPricesList.add(new Price(existingPrice, incomingPrice.getEnd(), existingPrice.getEnd()));
+                });
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().haveIntersectionOnTheLeftWith(existingPrice.getPriceActionPeriod()))
+                .findFirst()
+                .ifPresent(existingPrice -> {
+                    if (incomingPrice.getValue().equals(existingPrice.getValue()))
+                        incomingPrice.setBegin(existingPrice.getBegin());
+                    else
+                        groupOfPricesList.add(new Price(existingPrice, existingPrice.getBegin(), incomingPrice.getBegin()));
+                });
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().doesNotIntersectionWith(existingPrice.getPriceActionPeriod()))
+                .forEachOrdered(groupOfPricesList::add);
+
+        groupOfPricesList.add(incomingPrice);
+
+        return groupOfPricesList;
+    }
+
+    private static boolean isContain(Price existingPrice, Price incomingPrice) {
+        return existingPrice.getProductCode().equals(incomingPrice.getProductCode()) &&
+                existingPrice.getNumber() == incomingPrice.getNumber() &&
+                existingPrice.getDepart() == incomingPrice.getDepart();
+    }
+
+}
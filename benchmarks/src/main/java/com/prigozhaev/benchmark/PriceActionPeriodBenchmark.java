@@ -0,0 +1,78 @@
+package com.prigozhaev.benchmark;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.Price.PriceActionPeriod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the price action period checks, through the period objects
+ * and through the static checks on the bounds.
+ * <p>
+ * Run with {@code -prof gc} to see the bytes allocated per operation.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceActionPeriodBenchmark {
+
+    private static final int SIZE = 4096;
+
+    private Price[] prices;
+    private Price[] others;
+
+    @Setup
+    public void setUp() {
+        PriceGenerator generator = new PriceGenerator(SIZE / 4, 1, 0.5, 0.2, 42);
+        List<Price> existingPrices = generator.getExistingPrices();
+        List<Price> incomingPrices = generator.getIncomingPrices();
+        prices = existingPrices.subList(0, SIZE).toArray(new Price[0]);
+        others = incomingPrices.subList(0, SIZE).toArray(new Price[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void periodObjects(Blackhole blackhole) {
+        for (int i = 0; i < SIZE; i++) {
+            PriceActionPeriod period = prices[i].getPriceActionPeriod();
+            PriceActionPeriod other = others[i].getPriceActionPeriod();
+            blackhole.consume(period.isInsideIn(other));
+            blackhole.consume(period.haveIntersectionOnTheLeftWith(other));
+            blackhole.consume(period.haveIntersectionOnTheRightWith(other));
+            blackhole.consume(period.doesNotIntersectionWith(other));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void staticChecks(Blackhole blackhole) {
+        for (int i = 0; i < SIZE; i++) {
+            long begin = prices[i].getBeginMillis();
+            long end = prices[i].getEndMillis();
+            long otherBegin = others[i].getBeginMillis();
+            long otherEnd = others[i].getEndMillis();
+            blackhole.consume(PriceActionPeriod.isInsideIn(begin, end, otherBegin, otherEnd));
+            blackhole.consume(PriceActionPeriod.haveIntersectionOnTheLeftWith(begin, end, otherBegin, otherEnd));
+            blackhole.consume(PriceActionPeriod.haveIntersectionOnTheRightWith(begin, end, otherBegin, otherEnd));
+            blackhole.consume(PriceActionPeriod.doesNotIntersectionWith(begin, end, otherBegin, otherEnd));
+        }
+    }
+
+}
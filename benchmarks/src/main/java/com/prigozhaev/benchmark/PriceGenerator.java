@@ -0,0 +1,79 @@
+package com.prigozhaev.benchmark;
+
+import com.prigozhaev.model.Price;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code PriceGenerator} class generates price histories and imports for the benchmarks.
+ * <p>
+ * Every product gets {@value #NUMBERS} price numbers in {@value #DEPARTS} departments.
+ * Each price group gets a history of consecutive non-overlapping prices, and one incoming price
+ * that either intersects the history or follows it, depending on the overlap ratio.
+ * An intersecting incoming price has the value of the price it hits with the equal value ratio.
+ */
+
+public class PriceGenerator {
+
+    static final int NUMBERS = 2;
+    static final int DEPARTS = 2;
+
+    private static final long START = 1_546_300_800_000L;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final List<Price> existingPrices = new ArrayList<>();
+    private final List<Price> incomingPrices = new ArrayList<>();
+
+    /**
+     * Generates the prices.
+     *
+     * @param products        the number of products
+     * @param pricesPerGroup  the number of existing prices in every price group
+     * @param overlapRatio    the share of incoming prices intersecting the existing ones
+     * @param equalValueRatio the share of intersecting incoming prices with the value of the hit price
+     * @param seed            the seed of the random generator
+     */
+    public PriceGenerator(int products, int pricesPerGroup, double overlapRatio, double equalValueRatio, long seed) {
+        Random random = new Random(seed);
+
+        for (int product = 0; product < products; product++) {
+            String productCode = String.valueOf(100_000 + product);
+
+            for (int number = 1; number <= NUMBERS; number++) {
+                for (int depart = 1; depart <= DEPARTS; depart++) {
+                    List<Price> group = new ArrayList<>(pricesPerGroup);
+                    long begin = START;
+                    for (int i = 0; i < pricesPerGroup; i++) {
+                        long end = begin + (1 + random.nextInt(30)) * DAY;
+                        group.add(new Price(productCode, number, depart, begin, end, 1_000L + random.nextInt(100) * 10L));
+                        begin = end;
+                    }
+                    existingPrices.addAll(group);
+
+                    if (!group.isEmpty() && random.nextDouble() < overlapRatio) {
+                        Price hit = group.get(random.nextInt(group.size()));
+                        long incomingBegin = hit.getBeginMillis() + random.nextInt(2) * DAY;
+                        long incomingEnd = incomingBegin + (1 + random.nextInt(45)) * DAY;
+                        Long value = random.nextDouble() < equalValueRatio ? hit.getValue() : Long.valueOf(5L + random.nextInt(100) * 10L);
+                        incomingPrices.add(new Price(productCode, number, depart, incomingBegin, incomingEnd, value));
+                    } else {
+                        long incomingEnd = begin + (1 + random.nextInt(30)) * DAY;
+                        incomingPrices.add(new Price(productCode, number, depart, begin, incomingEnd, 1_000L + random.nextInt(100) * 10L));
+                    }
+                }
+            }
+        }
+    }
+
+    public List<Price> getExistingPrices() {
+        return existingPrices;
+    }
+
+    public List<Price> getIncomingPrices() {
+        return incomingPrices;
+    }
+
+}
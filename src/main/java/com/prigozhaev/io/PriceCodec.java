@@ -0,0 +1,275 @@
+package com.prigozhaev.io;
+
+import com.prigozhaev.model.Price;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Price Codec utility class.
+ * Allows to write price collections in a compact binary format and read them back.
+ *
+ * <p>Format:</p>
+ * <pre>
+ * magic "PRC1", version
+ * dictionary: count, then every product code (length + 1, UTF-8 bytes; 0 stands for null)
+ * groups: count, then for every group
+ *     product id, number, depart, price count, then for every price sorted by the start time
+ *         flags (has value, has id)
+ *         start time as the difference with the end time of the previous price of the group
+ *         duration of the price action period
+ *         value (8 bytes), id
+ * </pre>
+ * <p>
+ * Integers are written as variable-length quantities, signed ones in zig-zag encoding,
+ * so close timestamps of one group take one or two bytes each.
+ *
+ * @see Price
+ */
+
+public class PriceCodec {
+
+    private static final int MAGIC = 0x50524331;
+    private static final int VERSION = 1;
+
+    private static final int HAS_VALUE = 1;
+    private static final int HAS_ID = 2;
+
+    private static final Comparator<Price> ORDER = Comparator
+            .comparing(Price::getProductCode, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(Price::getNumber)
+            .thenComparingInt(Price::getDepart)
+            .thenComparingLong(Price::getBeginMillis);
+
+    /**
+     * The PriceCodec class cannot be instantiated.
+     */
+    private PriceCodec() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Encodes the prices into a byte array.
+     *
+     * @param prices the collection of prices
+     * @return the encoded prices
+     */
+    public static byte[] encode(Collection<Price> prices) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(prices.size() * 8 + 64);
+        try {
+            write(prices, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the prices from a byte array.
+     *
+     * @param bytes the encoded prices
+     * @return the prices sorted by product code, number, department and start date
+     * @throws IOException if the bytes are not encoded prices
+     */
+    public static List<Price> decode(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Writes the prices to the stream. The stream is flushed, but not closed.
+     *
+     * @param prices the collection of prices
+     * @param out    the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(Collection<Price> prices, OutputStream out) throws IOException {
+
+        List<Price> sorted = new ArrayList<>(prices);
+        sorted.sort(ORDER);
+
+        TreeSet<String> codes = new TreeSet<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (Price price : sorted)
+            codes.add(price.getProductCode());
+        List<String> dictionary = new ArrayList<>(codes);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+
+        writeVarInt(data, dictionary.size());
+        for (String code : dictionary) {
+            if (code == null) {
+                writeVarInt(data, 0);
+            } else {
+                byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(data, bytes.length + 1);
+                data.write(bytes);
+            }
+        }
+
+        int groupCount = 0;
+        for (int i = 0; i < sorted.size(); i++)
+            if (i == 0 || !sameGroup(sorted.get(i - 1), sorted.get(i)))
+                groupCount++;
+        writeVarInt(data, groupCount);
+
+        int productId = 0;
+        int from = 0;
+        while (from < sorted.size()) {
+            Price first = sorted.get(from);
+            int to = from + 1;
+            while (to < sorted.size() && sameGroup(first, sorted.get(to)))
+                to++;
+
+            while (!equalCodes(dictionary.get(productId), first.getProductCode()))
+                productId++;
+
+            writeVarInt(data, productId);
+            writeVarLong(data, zigZag(first.getNumber()));
+            writeVarLong(data, zigZag(first.getDepart()));
+            writeVarInt(data, to - from);
+
+            long previousEnd = 0;
+            for (int i = from; i < to; i++) {
+                Price price = sorted.get(i);
+                int flags = (price.getValue() != null ? HAS_VALUE : 0) | (price.getId() != null ? HAS_ID : 0);
+                data.writeByte(flags);
+                writeVarLong(data, zigZag(price.getBeginMillis() - previousEnd));
+                writeVarLong(data, zigZag(price.getEndMillis() - price.getBeginMillis()));
+                if (price.getValue() != null)
+                    data.writeLong(price.getValue());
+                if (price.getId() != null)
+                    writeVarLong(data, zigZag(price.getId()));
+                previousEnd = price.getEndMillis();
+            }
+
+            from = to;
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Reads the prices of one encoded record from the stream.
+     * <p>
+     * The stream is read exactly up to the end of the record, so records written one after
+     * another can be read back by consecutive calls. The stream is not buffered by this method:
+     * pass a buffered stream to read a file or a socket efficiently.
+     *
+     * @param in the input stream
+     * @return the prices sorted by product code, number, department and start date
+     * @throws IOException if an I/O error occurs or the stream does not contain encoded prices
+     */
+    public static List<Price> read(InputStream in) throws IOException {
+        return readRecord(new DataInputStream(in));
+    }
+
+    private static List<Price> readRecord(DataInput data) throws IOException {
+
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a price stream");
+        int version = data.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported price stream version: " + version);
+
+        String[] dictionary = new String[readVarInt(data)];
+        for (int i = 0; i < dictionary.length; i++) {
+            int length = readVarInt(data);
+            if (length > 0) {
+                byte[] bytes = new byte[length - 1];
+                data.readFully(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        List<Price> prices = new ArrayList<>();
+        int groupCount = readVarInt(data);
+        for (int group = 0; group < groupCount; group++) {
+            int productId = readVarInt(data);
+            if (productId >= dictionary.length)
+                throw new IOException("Unknown product id: " + productId);
+            String productCode = dictionary[productId];
+            int number = (int) unZigZag(readVarLong(data));
+            int depart = (int) unZigZag(readVarLong(data));
+            int count = readVarInt(data);
+
+            long previousEnd = 0;
+            for (int i = 0; i < count; i++) {
+                int flags = data.readUnsignedByte();
+                long begin = previousEnd + unZigZag(readVarLong(data));
+                long end = begin + unZigZag(readVarLong(data));
+                Long value = (flags & HAS_VALUE) != 0 ? data.readLong() : null;
+                Price price = new Price(productCode, number, depart, begin, end, value);
+                if ((flags & HAS_ID) != 0)
+                    price.setId(unZigZag(readVarLong(data)));
+                prices.add(price);
+                previousEnd = end;
+            }
+        }
+
+        return prices;
+    }
+
+    private static boolean sameGroup(Price price, Price other) {
+        return equalCodes(price.getProductCode(), other.getProductCode())
+                && price.getNumber() == other.getNumber()
+                && price.getDepart() == other.getDepart();
+    }
+
+    private static boolean equalCodes(String code, String other) {
+        return code == null ? other == null : code.equals(other);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE)
+            throw new IOException("Malformed price stream: " + value);
+        return (int) value;
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+
+}
@@ -0,0 +1,363 @@
+package com.prigozhaev.io;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * The {@code PriceHistoryFile} class represents a merged price history stored in a file
+ * and read through a memory mapping.
+ *
+ * <p>Layout (big-endian):</p>
+ * <pre>
+ * header:     magic "PRH1", version, product count, group count, price count
+ * dictionary: offsets of the product codes (product count + 1 ints), then the UTF-8 bytes
+ *             of the product codes in their natural order
+ * groups:     product id, number, depart, first price, price count (5 ints per group),
+ *             sorted by the group key
+ * prices:     begin, end, value, id (4 longs), flags (1 byte) per price,
+ *             sorted by the group key and the start time
+ * </pre>
+ * <p>
+ * Opening the file reads only the product code dictionary; a price group is found by a binary
+ * search over the group directory, and its prices are read straight from the mapping on demand.
+ * All reads use absolute positions, so the file can be read by many threads at once.
+ * A file is never modified in place: it is replaced atomically, so the opened files keep
+ * reading their own version. The file is limited to 2 GB.
+ *
+ * @see com.prigozhaev.util.PriceManager#mergeSorted(Iterator, Iterator, java.util.function.Consumer)
+ */
+
+public final class PriceHistoryFile implements Closeable, Iterable<Price> {
+
+    private static final int MAGIC = 0x50524831;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int GROUP_SIZE = 20;
+    private static final int PRICE_SIZE = 33;
+
+    private static final int HAS_VALUE = 1;
+    private static final int HAS_ID = 2;
+
+    private static final Comparator<Price> ORDER = Comparator.comparing(Price::getProductCode)
+            .thenComparingInt(Price::getNumber)
+            .thenComparingInt(Price::getDepart)
+            .thenComparingLong(Price::getBeginMillis);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String[] productCodes;
+    private final int groupCount;
+    private final int priceCount;
+    private final int groupsOffset;
+    private final int pricesOffset;
+
+    private PriceHistoryFile(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a price history file");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported price history file version: " + buffer.getInt(4));
+
+        int productCount = buffer.getInt(8);
+        groupCount = buffer.getInt(12);
+        priceCount = buffer.getInt(16);
+
+        int codesOffset = HEADER_SIZE + (productCount + 1) * 4;
+        productCodes = new String[productCount];
+        for (int i = 0; i < productCount; i++) {
+            int from = buffer.getInt(HEADER_SIZE + i * 4);
+            int to = buffer.getInt(HEADER_SIZE + (i + 1) * 4);
+            byte[] bytes = new byte[to - from];
+            ByteBuffer view = buffer.duplicate();
+            view.position(codesOffset + from);
+            view.get(bytes);
+            productCodes[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        groupsOffset = codesOffset + (productCount == 0 ? 0 : buffer.getInt(HEADER_SIZE + productCount * 4));
+        pricesOffset = groupsOffset + groupCount * GROUP_SIZE;
+
+        if ((long) pricesOffset + (long) priceCount * PRICE_SIZE > buffer.limit())
+            throw new IOException("Price history file is truncated");
+    }
+
+    /**
+     * Writes the merged price history to the file, replacing its content.
+     * <p>
+     * The history is written to a temporary file in the same directory, which is then
+     * atomically moved over the file. Readers that have the file open keep their mapping
+     * of the old content, and new readers see either the old or the new content, never a
+     * partially written file.
+     *
+     * @param path   the path of the file
+     * @param prices the merged prices
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if a price has no product code
+     *                                  or the prices do not fit into a file
+     */
+    public static void write(Path path, Collection<Price> prices) throws IOException {
+
+        List<Price> sorted = new ArrayList<>(prices);
+        for (Price price : sorted)
+            if (price.getProductCode() == null)
+                throw new IllegalArgumentException("Price without product code: " + price);
+        sorted.sort(ORDER);
+
+        TreeSet<String> productCodes = new TreeSet<>();
+        for (Price price : sorted)
+            productCodes.add(price.getProductCode());
+        List<String> dictionary = new ArrayList<>(productCodes);
+        byte[][] codes = new byte[dictionary.size()][];
+        long codesSize = 0;
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+            codesSize += codes[i].length;
+        }
+
+        List<int[]> groups = new ArrayList<>();
+        int productId = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Price price = sorted.get(i);
+            int[] group = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+            if (group == null || !sorted.get(i - 1).getProductCode().equals(price.getProductCode())
+                    || group[1] != price.getNumber() || group[2] != price.getDepart()) {
+                while (!dictionary.get(productId).equals(price.getProductCode()))
+                    productId++;
+                group = new int[]{productId, price.getNumber(), price.getDepart(), i, 0};
+                groups.add(group);
+            }
+            group[4]++;
+        }
+
+        long fileSize = HEADER_SIZE + (codes.length + 1) * 4L + codesSize
+                + (long) groups.size() * GROUP_SIZE + (long) sorted.size() * PRICE_SIZE;
+        if (fileSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Price history does not fit into a file: " + fileSize + " bytes");
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            write(temporary, codes, groups, sorted);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void write(Path path, byte[][] codes, List<int[]> groups, List<Price> sorted) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(codes.length);
+            out.writeInt(groups.size());
+            out.writeInt(sorted.size());
+
+            int offset = 0;
+            for (byte[] code : codes) {
+                out.writeInt(offset);
+                offset += code.length;
+            }
+            out.writeInt(offset);
+            for (byte[] code : codes)
+                out.write(code);
+
+            for (int[] group : groups)
+                for (int field : group)
+                    out.writeInt(field);
+
+            for (Price price : sorted) {
+                out.writeLong(price.getBeginMillis());
+                out.writeLong(price.getEndMillis());
+                out.writeLong(price.getValue() == null ? 0 : price.getValue());
+                out.writeLong(price.getId() == null ? 0 : price.getId());
+                out.writeByte((price.getValue() != null ? HAS_VALUE : 0) | (price.getId() != null ? HAS_ID : 0));
+            }
+        }
+    }
+
+    /**
+     * Opens the price history file for reading.
+     *
+     * @param path the path of the file
+     * @return the opened file
+     * @throws IOException if an I/O error occurs or the file is not a price history file
+     */
+    public static PriceHistoryFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Price history file is too large: " + channel.size() + " bytes");
+            return new PriceHistoryFile(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the prices of the group sorted by the start date.
+     *
+     * @param key the price group key
+     * @return a new list of the prices, empty if the file has no such group
+     */
+    public List<Price> getPrices(PriceGroupKey key) {
+        int group = findGroup(key.getProductCode(), key.getNumber(), key.getDepart());
+        if (group < 0)
+            return Collections.emptyList();
+
+        String productCode = productCodes[groupField(group, 0)];
+        int first = groupField(group, 3);
+        int count = groupField(group, 4);
+        List<Price> prices = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++)
+            prices.add(readPrice(i, productCode, key.getNumber(), key.getDepart()));
+        return prices;
+    }
+
+    /**
+     * Returns the price acting at the moment in time, searching the group right in the mapping.
+     *
+     * @param productCode   the unique product code
+     * @param number        the price number
+     * @param depart        the department number
+     * @param instantMillis the moment in time in milliseconds since the epoch
+     * @return the acting price, or {@code null} if no price acts at that moment
+     */
+    public Price activePrice(String productCode, int number, int depart, long instantMillis) {
+        int group = findGroup(productCode, number, depart);
+        if (group < 0)
+            return null;
+
+        int low = groupField(group, 3);
+        int high = low + groupField(group, 4) - 1;
+        int first = low;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(priceOffset(middle)) <= instantMillis)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+
+        if (high < first || instantMillis >= buffer.getLong(priceOffset(high) + 8))
+            return null;
+        return readPrice(high, productCodes[groupField(group, 0)], number, depart);
+    }
+
+    /**
+     * Returns an iterator over all prices of the file, sorted by product code, number,
+     * department and start date, so the file can be merged with
+     * {@link com.prigozhaev.util.PriceManager#mergeSorted(Iterator, Iterator, java.util.function.Consumer)}.
+     *
+     * @return an iterator reading the prices from the mapping
+     */
+    @Override
+    public Iterator<Price> iterator() {
+        return new Iterator<Price>() {
+
+            private int group;
+            private int price;
+
+            @Override
+            public boolean hasNext() {
+                return price < priceCount;
+            }
+
+            @Override
+            public Price next() {
+                if (price >= priceCount)
+                    throw new NoSuchElementException();
+                while (price >= groupField(group, 3) + groupField(group, 4))
+                    group++;
+                return readPrice(price++, productCodes[groupField(group, 0)], groupField(group, 1), groupField(group, 2));
+            }
+        };
+    }
+
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public int size() {
+        return priceCount;
+    }
+
+    /**
+     * Closes the file channel. The mapping itself is released when it is garbage collected.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int findGroup(String productCode, int number, int depart) {
+        int productId = Arrays.binarySearch(productCodes, productCode);
+        if (productId < 0)
+            return -1;
+
+        int low = 0;
+        int high = groupCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = Integer.compare(groupField(middle, 0), productId);
+            if (order == 0)
+                order = Integer.compare(groupField(middle, 1), number);
+            if (order == 0)
+                order = Integer.compare(groupField(middle, 2), depart);
+
+            if (order < 0)
+                low = middle + 1;
+            else if (order > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    private int groupField(int group, int field) {
+        return buffer.getInt(groupsOffset + group * GROUP_SIZE + field * 4);
+    }
+
+    private int priceOffset(int price) {
+        return pricesOffset + price * PRICE_SIZE;
+    }
+
+    private Price readPrice(int index, String productCode, int number, int depart) {
+        int offset = priceOffset(index);
+        int flags = buffer.get(offset + 32);
+        Price price = new Price(productCode, number, depart, buffer.getLong(offset), buffer.getLong(offset + 8),
+                (flags & HAS_VALUE) != 0 ? Long.valueOf(buffer.getLong(offset + 16)) : null);
+        if ((flags & HAS_ID) != 0)
+            price.setId(buffer.getLong(offset + 24));
+        return price;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.prigozhaev.model;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code CompactionResult} class represents a price history compacted into
+ * the minimal set of non-overlapping prices.
+ *
+ * @see Price
+ */
+
+@Getter
+@ToString
+public final class CompactionResult {
+
+    private final List<Price> prices;
+
+    private final int removedCount;
+
+    /**
+     * Standard constructor for initializing an {@code CompactionResult} object.
+     *
+     * @param prices       the compacted prices
+     * @param removedCount the number of prices removed by the compaction
+     */
+    public CompactionResult(List<Price> prices, int removedCount) {
+        this.prices = Collections.unmodifiableList(prices);
+        this.removedCount = removedCount;
+    }
+
+}
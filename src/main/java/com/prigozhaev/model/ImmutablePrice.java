@@ -0,0 +1,130 @@
+package com.prigozhaev.model;
+
+import java.util.Date;
+
+/**
+ * The {@code ImmutablePrice} class represents a price that cannot be modified.
+ * <p>
+ * Every setter throws {@link UnsupportedOperationException}, so immutable prices can be cached
+ * without defensive copies. The fields are inherited from {@link Price} and are not final, so an
+ * immutable price is only guaranteed to be seen fully constructed by other threads when it is
+ * safely published: through a concurrent collection, a volatile or final field, or a
+ * {@link com.prigozhaev.util.PriceSnapshotPublisher}. The merge never modifies its input prices,
+ * and the prices it derives from immutable ones by {@link #withPeriod(long, long, Long)} are
+ * immutable as well.
+ * <p>
+ * An immutable price is equal to a mutable price with the same fields.
+ * <p>
+ * The class extends {@link Price} only so that immutable prices can flow through the APIs that
+ * accept prices, and it is not a full substitute for one: code that modifies a price it was given,
+ * like the original merge did, fails on an immutable price. Pass immutable prices only to code that
+ * treats its input prices as read-only, and use {@link #withPeriod(long, long, Long)} or
+ * {@link #withId(Long)} instead of the setters.
+ *
+ * @see Price
+ */
+
+public final class ImmutablePrice extends Price {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Standard constructor for initializing an {@code ImmutablePrice} object.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param begin       the price start date
+     * @param end         the price end date
+     * @param value       the currency value (in kopecks)
+     * @param id          the id of the price, may be {@code null}
+     */
+    public ImmutablePrice(String productCode, int number, int depart, Date begin, Date end, Long value, Long id) {
+        this(productCode, number, depart, begin.getTime(), end.getTime(), value, id);
+    }
+
+    /**
+     * Constructor for initializing an {@code ImmutablePrice} object with the price action period
+     * given in milliseconds since the epoch.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks)
+     * @param id          the id of the price, may be {@code null}
+     */
+    public ImmutablePrice(String productCode, int number, int depart, long beginMillis, long endMillis, Long value, Long id) {
+        super(productCode, number, depart, beginMillis, endMillis, value);
+        super.setId(id);
+    }
+
+    /**
+     * Returns an immutable copy of the price, or the price itself if it is already immutable.
+     *
+     * @param price the price
+     * @return an immutable price with the same fields and id
+     */
+    public static ImmutablePrice of(Price price) {
+        if (price instanceof ImmutablePrice)
+            return (ImmutablePrice) price;
+        return new ImmutablePrice(price.getProductCode(), price.getNumber(), price.getDepart(),
+                price.getBeginMillis(), price.getEndMillis(), price.getValue(), price.getId());
+    }
+
+    @Override
+    public ImmutablePrice withPeriod(long beginMillis, long endMillis, Long id) {
+        return new ImmutablePrice(getProductCode(), getNumber(), getDepart(), beginMillis, endMillis, getValue(), id);
+    }
+
+    @Override
+    public void setId(Long id) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setProductCode(String productCode) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setNumber(int number) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setDepart(int depart) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBeginMillis(long beginMillis) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setEndMillis(long endMillis) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setValue(Long value) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setBegin(Date begin) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setEnd(Date end) {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Price is immutable");
+    }
+
+}
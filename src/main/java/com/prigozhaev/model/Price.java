@@ -43,22 +43,19 @@ public class Price implements Serializable {
 
     private int depart;
 
-    private Date begin;
+    private long beginMillis;
 
-    private Date end;
+    private long endMillis;
 
     private Long value;
 
-    @EqualsAndHashCode.Exclude
-    private transient PriceActionPeriod priceActionPeriod;
-
     /**
      * Initializes a newly created {@code Price} object so that it represents
      * an empty price.
      * <p>
      * Note that use of this constructor is not recommended
-     * because the {@code PriceActionPeriod} object will not initialize
-     * because there is no information about the start and end time of the price.
+     * because the price action period will be empty
+     * until the start and end time of the price are set.
      */
     public Price() {
     }
@@ -74,13 +71,27 @@ public class Price implements Serializable {
      * @param value       the currency value (in kopecks)
      */
     public Price(String productCode, int number, int depart, Date begin, Date end, Long value) {
+        this(productCode, number, depart, begin.getTime(), end.getTime(), value);
+    }
+
+    /**
+     * Constructor for initializing an {@code Price} object with the price action period
+     * given in milliseconds since the epoch.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks)
+     */
+    public Price(String productCode, int number, int depart, long beginMillis, long endMillis, Long value) {
         this.productCode = productCode;
         this.number = number;
         this.depart = depart;
-        this.begin = begin;
-        this.end = end;
+        this.beginMillis = beginMillis;
+        this.endMillis = endMillis;
         this.value = value;
-        this.priceActionPeriod = new PriceActionPeriod(begin, end);
     }
 
     /**
@@ -93,35 +104,134 @@ public class Price implements Serializable {
      * @see com.prigozhaev.util.PriceManager#merge(Collection, Collection)
      */
     public Price(Price price, Date begin, Date end) {
-        this.productCode = price.getProductCode();
-        this.number = price.getNumber();
-        this.depart = price.getDepart();
-        this.begin = begin;
-        this.end = end;
-        this.value = price.value;
-        this.priceActionPeriod = new PriceActionPeriod(begin, end);
+        this(price, begin.getTime(), end.getTime());
+    }
+
+    /**
+     * The constructor is used to create a new price when combining prices,
+     * when some prices may change the price action period.
+     *
+     * @param price       the existing price
+     * @param beginMillis the new start time for the price action period in milliseconds since the epoch
+     * @param endMillis   the new end time for the price action period in milliseconds since the epoch
+     * @see com.prigozhaev.util.PriceManager#merge(Collection, Collection)
+     */
+    public Price(Price price, long beginMillis, long endMillis) {
+        this(price.productCode, price.number, price.depart, beginMillis, endMillis, price.value);
+    }
+
+    /**
+     * Returns a price of the same product, number, department and currency value
+     * with another price action period and id. The price itself is not modified.
+     * <p>
+     * A price derived from an {@link ImmutablePrice} is immutable as well,
+     * so merging immutable prices never produces mutable ones.
+     *
+     * @param beginMillis the start time for the price action period in milliseconds since the epoch
+     * @param endMillis   the end time for the price action period in milliseconds since the epoch
+     * @param id          the id of the derived price, may be {@code null}
+     * @return a new price
+     * @see com.prigozhaev.util.PriceManager#merge(Collection, Collection)
+     */
+    public Price withPeriod(long beginMillis, long endMillis, Long id) {
+        Price price = new Price(this, beginMillis, endMillis);
+        price.id = id;
+        return price;
+    }
+
+    /**
+     * Returns a copy of the price with another id. The price itself is not modified.
+     *
+     * @param id the id of the copy, may be {@code null}
+     * @return a new price, immutable if this price is immutable
+     * @see #withPeriod(long, long, Long)
+     * @see com.prigozhaev.persistence.JdbcPriceRepository#write(PriceChangeset)
+     */
+    public Price withId(Long id) {
+        return withPeriod(beginMillis, endMillis, id);
+    }
+
+    /**
+     * Returns the price start date.
+     *
+     * @return a new {@code Date} for the price start time
+     */
+    public Date getBegin() {
+        return new Date(beginMillis);
+    }
+
+    /**
+     * Sets the price start date.
+     *
+     * @param begin the price start date
+     */
+    public void setBegin(Date begin) {
+        this.beginMillis = begin.getTime();
+    }
+
+    /**
+     * Returns the price end date.
+     *
+     * @return a new {@code Date} for the price end time
+     */
+    public Date getEnd() {
+        return new Date(endMillis);
+    }
+
+    /**
+     * Sets the price end date.
+     *
+     * @param end the price end date
+     */
+    public void setEnd(Date end) {
+        this.endMillis = end.getTime();
+    }
+
+    /**
+     * Returns the price action period of the price.
+     * <p>
+     * The period is a view of the current start and end time of the price,
+     * so it always stays consistent with them. The hot paths should rather use the
+     * static checks of {@link PriceActionPeriod}, which do not allocate.
+     *
+     * @return the price action period
+     */
+    public PriceActionPeriod getPriceActionPeriod() {
+        return new PriceActionPeriod(beginMillis, endMillis);
     }
 
     /**
      * The {@code PriceActionPeriod} class represents the price action period.
-     * By design, it should always be equal to the time range between {@code this.begin} and {@code this.end}.
+     * <p>
+     * The period is kept as milliseconds since the epoch. Every check is also available as
+     * a static method taking the bounds of both periods, so it can be used without allocation.
      */
-    public class PriceActionPeriod {
+    public static final class PriceActionPeriod {
 
-        private Date begin;
-        private Date end;
+        private final long begin;
+        private final long end;
 
         /**
          * Constructs an price action period.
          *
-         * @param begin the start date for the price action period
-         * @param end   the end date for the price action period
+         * @param begin the start time for the price action period in milliseconds since the epoch
+         * @param end   the end time for the price action period in milliseconds since the epoch
          */
-        PriceActionPeriod(Date begin, Date end) {
+        public PriceActionPeriod(long begin, long end) {
             this.begin = begin;
             this.end = end;
         }
 
+        /**
+         * Constructs an price action period.
+         *
+         * @param begin the start date for the price action period
+         * @param end   the end date for the price action period
+         */
+        public PriceActionPeriod(Date begin, Date end) {
+            this(begin.getTime(), end.getTime());
+        }
+
         /**
          * The method checks if the price action period (this) is inside the another period (param).
          * <p>
@@ -139,8 +249,21 @@ public class Price implements Serializable {
          * the other period (param), and {@code false} otherwise
          */
         public boolean isInsideIn(PriceActionPeriod priceActionPeriod) {
-            return (this.begin.after(priceActionPeriod.begin) || this.begin.equals(priceActionPeriod.begin)) &&
-                    (this.end.before(priceActionPeriod.end) || this.end.equals(priceActionPeriod.end));
+            return isInsideIn(begin, end, priceActionPeriod.begin, priceActionPeriod.end);
+        }
+
+        /**
+         * The method checks if the checked period is inside the another period.
+         *
+         * @param begin      the start time of the checked period
+         * @param end        the end time of the checked period
+         * @param otherBegin the start time of the period, regarding which check will be made
+         * @param otherEnd   the end time of the period, regarding which check will be made
+         * @return {@code true} if the checked period is fully in the range of the other period
+         * @see #isInsideIn(PriceActionPeriod)
+         */
+        public static boolean isInsideIn(long begin, long end, long otherBegin, long otherEnd) {
+            return begin >= otherBegin && end <= otherEnd;
         }
 
         /**
@@ -161,9 +284,21 @@ public class Price implements Serializable {
          * another period (param) on the right, and {@code false} otherwise
          */
         public boolean haveIntersectionOnTheLeftWith(PriceActionPeriod priceActionPeriod) {
-            return this.end.after(priceActionPeriod.end) &&
-                    this.begin.before(priceActionPeriod.end) &&
-                    this.begin.after(priceActionPeriod.begin);
+            return haveIntersectionOnTheLeftWith(begin, end, priceActionPeriod.begin, priceActionPeriod.end);
+        }
+
+        /**
+         * The method checks if the checked period intersects with another period on the right.
+         *
+         * @param begin      the start time of the checked period
+         * @param end        the end time of the checked period
+         * @param otherBegin the start time of the period, regarding which check will be made
+         * @param otherEnd   the end time of the period, regarding which check will be made
+         * @return {@code true} if the checked period has an intersection with the other period on the right
+         * @see #haveIntersectionOnTheLeftWith(PriceActionPeriod)
+         */
+        public static boolean haveIntersectionOnTheLeftWith(long begin, long end, long otherBegin, long otherEnd) {
+            return end > otherEnd && begin < otherEnd && begin > otherBegin;
         }
 
         /**
@@ -184,9 +319,21 @@ public class Price implements Serializable {
          * another period (param) on the left, and {@code false} otherwise
          */
         public boolean haveIntersectionOnTheRightWith(PriceActionPeriod priceActionPeriod) {
-            return this.begin.before(priceActionPeriod.begin) &&
-                    this.end.after(priceActionPeriod.begin) &&
-                    this.end.before(priceActionPeriod.end);
+            return haveIntersectionOnTheRightWith(begin, end, priceActionPeriod.begin, priceActionPeriod.end);
+        }
+
+        /**
+         * The method checks if the checked period intersects with another period on the left.
+         *
+         * @param begin      the start time of the checked period
+         * @param end        the end time of the checked period
+         * @param otherBegin the start time of the period, regarding which check will be made
+         * @param otherEnd   the end time of the period, regarding which check will be made
+         * @return {@code true} if the checked period has an intersection with the other period on the left
+         * @see #haveIntersectionOnTheRightWith(PriceActionPeriod)
+         */
+        public static boolean haveIntersectionOnTheRightWith(long begin, long end, long otherBegin, long otherEnd) {
+            return begin < otherBegin && end > otherBegin && end < otherEnd;
         }
 
         /**
@@ -206,8 +353,21 @@ public class Price implements Serializable {
          * another period (param), and {@code false} otherwise
          */
         public boolean doesNotIntersectionWith(PriceActionPeriod priceActionPeriod) {
-            return (this.begin.after(priceActionPeriod.end) || this.begin.equals(priceActionPeriod.end)) ||
-                    (this.end.before(priceActionPeriod.begin) || this.end.equals(priceActionPeriod.begin));
+            return doesNotIntersectionWith(begin, end, priceActionPeriod.begin, priceActionPeriod.end);
+        }
+
+        /**
+         * The method checks if the checked period does not intersect with another period.
+         *
+         * @param begin      the start time of the checked period
+         * @param end        the end time of the checked period
+         * @param otherBegin the start time of the period, regarding which check will be made
+         * @param otherEnd   the end time of the period, regarding which check will be made
+         * @return {@code true} if the checked period does not intersect with the other period
+         * @see #doesNotIntersectionWith(PriceActionPeriod)
+         */
+        public static boolean doesNotIntersectionWith(long begin, long end, long otherBegin, long otherEnd) {
+            return begin >= otherEnd || end <= otherBegin;
         }
 
     }
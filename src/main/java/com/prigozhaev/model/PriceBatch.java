@@ -0,0 +1,335 @@
+package com.prigozhaev.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@code PriceBatch} class represents a batch of prices stored by columns.
+ * <p>
+ * Each price of the batch is a row; the columns are primitive arrays, so a batch of any size
+ * is a handful of objects instead of several objects per price. Product codes are
+ * dictionary-encoded: every distinct code is stored once in a {@link ProductCodeDictionary}
+ * and the rows keep its dense id. Batches sharing a dictionary share the product ids.
+ * A row without a currency value keeps {@code 0} in the value column and is marked
+ * by {@link #hasValue(int)}; likewise a row without an id is marked by {@link #hasId(int)}.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @see Price
+ */
+
+public final class PriceBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final ProductCodeDictionary dictionary;
+
+    private int size;
+    private int[] productId;
+    private int[] number;
+    private int[] depart;
+    private long[] begin;
+    private long[] end;
+    private long[] value;
+    private boolean[] hasValue;
+    private long[] id;
+    private boolean[] hasId;
+
+    /**
+     * Constructs an empty price batch.
+     */
+    public PriceBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty price batch with the given initial capacity.
+     *
+     * @param capacity the initial number of rows
+     */
+    public PriceBatch(int capacity) {
+        this(capacity, new ProductCodeDictionary());
+    }
+
+    /**
+     * Constructs an empty price batch with the given initial capacity
+     * encoding product codes with the given dictionary.
+     *
+     * @param capacity   the initial number of rows
+     * @param dictionary the product code dictionary
+     */
+    public PriceBatch(int capacity, ProductCodeDictionary dictionary) {
+        this.dictionary = dictionary;
+        capacity = Math.max(capacity, 1);
+        productId = new int[capacity];
+        number = new int[capacity];
+        depart = new int[capacity];
+        begin = new long[capacity];
+        end = new long[capacity];
+        value = new long[capacity];
+        hasValue = new boolean[capacity];
+        id = new long[capacity];
+        hasId = new boolean[capacity];
+    }
+
+    /**
+     * Creates a price batch containing the prices of the collection.
+     *
+     * @param prices the collection of prices
+     * @return a new price batch
+     */
+    public static PriceBatch of(Collection<Price> prices) {
+        return of(prices, new ProductCodeDictionary());
+    }
+
+    /**
+     * Creates a price batch containing the prices of the collection
+     * encoding product codes with the given dictionary.
+     *
+     * @param prices     the collection of prices
+     * @param dictionary the product code dictionary
+     * @return a new price batch
+     */
+    public static PriceBatch of(Collection<Price> prices, ProductCodeDictionary dictionary) {
+        PriceBatch batch = new PriceBatch(prices.size(), dictionary);
+        for (Price price : prices)
+            batch.add(price.getProductCode(), price.getNumber(), price.getDepart(),
+                    price.getBeginMillis(), price.getEndMillis(), price.getValue(), price.getId());
+        return batch;
+    }
+
+    /**
+     * Adds a price to the batch.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks), may be {@code null}
+     */
+    public void add(String productCode, int number, int depart, long beginMillis, long endMillis, Long value) {
+        add(productCode, number, depart, beginMillis, endMillis, value, null);
+    }
+
+    /**
+     * Adds a price with an id to the batch.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks), may be {@code null}
+     * @param id          the id of the price, may be {@code null}
+     */
+    public void add(String productCode, int number, int depart, long beginMillis, long endMillis, Long value, Long id) {
+        add(productId(productCode), number, depart, beginMillis, endMillis,
+                value == null ? 0 : value, value != null, id == null ? 0 : id, id != null);
+    }
+
+    /**
+     * Adds a price to the batch.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks)
+     */
+    public void add(String productCode, int number, int depart, long beginMillis, long endMillis, long value) {
+        add(productId(productCode), number, depart, beginMillis, endMillis, value, true);
+    }
+
+    /**
+     * Adds a price with an already encoded product code to the batch.
+     *
+     * @param productId   the id of the product code in the dictionary of this batch
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks)
+     * @param hasValue    {@code false} if the price has no currency value
+     * @throws IllegalArgumentException if the product id is unknown to the dictionary of this batch
+     */
+    public void add(int productId, int number, int depart, long beginMillis, long endMillis, long value, boolean hasValue) {
+        add(productId, number, depart, beginMillis, endMillis, value, hasValue, 0, false);
+    }
+
+    /**
+     * Adds a price with an already encoded product code and an id to the batch.
+     *
+     * @param productId   the id of the product code in the dictionary of this batch
+     * @param number      the price number
+     * @param depart      the department number
+     * @param beginMillis the price start time in milliseconds since the epoch
+     * @param endMillis   the price end time in milliseconds since the epoch
+     * @param value       the currency value (in kopecks)
+     * @param hasValue    {@code false} if the price has no currency value
+     * @param id          the id of the price
+     * @param hasId       {@code false} if the price has no id
+     * @throws IllegalArgumentException if the product id is unknown to the dictionary of this batch
+     */
+    public void add(int productId, int number, int depart, long beginMillis, long endMillis, long value, boolean hasValue,
+                    long id, boolean hasId) {
+        if (productId < 0 || productId >= dictionary.size())
+            throw new IllegalArgumentException("Unknown product id: " + productId);
+
+        if (size == this.productId.length)
+            grow();
+
+        this.productId[size] = productId;
+        this.number[size] = number;
+        this.depart[size] = depart;
+        this.begin[size] = beginMillis;
+        this.end[size] = endMillis;
+        this.value[size] = value;
+        this.hasValue[size] = hasValue;
+        this.id[size] = id;
+        this.hasId[size] = hasId;
+        size++;
+    }
+
+    /**
+     * Returns the id of the product code in the dictionary of this batch,
+     * adding the code to the dictionary if needed.
+     *
+     * @param productCode the product code
+     * @return the dense id of the product code
+     */
+    public int productId(String productCode) {
+        return dictionary.id(productCode);
+    }
+
+    /**
+     * Returns the product code by its id in the dictionary of this batch.
+     *
+     * @param productId the id of the product code
+     * @return the product code
+     */
+    public String productCode(int productId) {
+        return dictionary.code(productId);
+    }
+
+    /**
+     * Returns the number of distinct product codes in the dictionary of this batch.
+     * A shared dictionary may hold codes no row of this batch refers to.
+     *
+     * @return the size of the product code dictionary
+     */
+    public int productCount() {
+        return dictionary.size();
+    }
+
+    public ProductCodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getProductCode(int row) {
+        return dictionary.code(productId[checkRow(row)]);
+    }
+
+    public int getProductId(int row) {
+        return productId[checkRow(row)];
+    }
+
+    public int getNumber(int row) {
+        return number[checkRow(row)];
+    }
+
+    public int getDepart(int row) {
+        return depart[checkRow(row)];
+    }
+
+    public long getBeginMillis(int row) {
+        return begin[checkRow(row)];
+    }
+
+    public long getEndMillis(int row) {
+        return end[checkRow(row)];
+    }
+
+    public long getValue(int row) {
+        return value[checkRow(row)];
+    }
+
+    public boolean hasValue(int row) {
+        return hasValue[checkRow(row)];
+    }
+
+    public long getId(int row) {
+        return id[checkRow(row)];
+    }
+
+    public boolean hasId(int row) {
+        return hasId[checkRow(row)];
+    }
+
+    /**
+     * Returns the packed key of the group the row belongs to.
+     *
+     * @param row the row index
+     * @return the packed group key
+     * @throws IllegalArgumentException if the number or the department does not fit into the key
+     * @see ProductCodeDictionary#pack(int, int, int)
+     */
+    public long getGroupKey(int row) {
+        checkRow(row);
+        return ProductCodeDictionary.pack(productId[row], number[row], depart[row]);
+    }
+
+    /**
+     * Materialises a row of the batch as a {@code Price} object.
+     *
+     * @param row the row index
+     * @return a new price
+     */
+    public Price toPrice(int row) {
+        checkRow(row);
+        Price price = new Price(dictionary.code(productId[row]), number[row], depart[row], begin[row], end[row],
+                hasValue[row] ? Long.valueOf(value[row]) : null);
+        if (hasId[row])
+            price.setId(id[row]);
+        return price;
+    }
+
+    /**
+     * Materialises all rows of the batch as {@code Price} objects.
+     *
+     * @return a new list of prices in the row order
+     */
+    public List<Price> toPrices() {
+        List<Price> prices = new ArrayList<>(size);
+        for (int row = 0; row < size; row++)
+            prices.add(toPrice(row));
+        return prices;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        return row;
+    }
+
+    private void grow() {
+        int capacity = productId.length + (productId.length >> 1) + 1;
+        productId = Arrays.copyOf(productId, capacity);
+        number = Arrays.copyOf(number, capacity);
+        depart = Arrays.copyOf(depart, capacity);
+        begin = Arrays.copyOf(begin, capacity);
+        end = Arrays.copyOf(end, capacity);
+        value = Arrays.copyOf(value, capacity);
+        hasValue = Arrays.copyOf(hasValue, capacity);
+        id = Arrays.copyOf(id, capacity);
+        hasId = Arrays.copyOf(hasId, capacity);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.prigozhaev.model;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code PriceChangeset} class represents the changes made to a price history by a merge.
+ * <p>
+ * Inserted prices are new rows of the history. Updated prices replace existing rows whose
+ * price action period was shortened or extended, and carry the id of the row they replace.
+ * Removed prices are existing rows that no longer act at any moment in time.
+ *
+ * @see Price
+ */
+
+@Getter
+@ToString
+public final class PriceChangeset {
+
+    private final List<Price> inserted;
+
+    private final List<Price> updated;
+
+    private final List<Price> removed;
+
+    /**
+     * Standard constructor for initializing an {@code PriceChangeset} object.
+     *
+     * @param inserted the inserted prices
+     * @param updated  the updated prices
+     * @param removed  the removed prices
+     */
+    public PriceChangeset(List<Price> inserted, List<Price> updated, List<Price> removed) {
+        this.inserted = Collections.unmodifiableList(inserted);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Checks if the changeset contains no changes.
+     *
+     * @return {@code true} if nothing was inserted, updated or removed
+     */
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+}
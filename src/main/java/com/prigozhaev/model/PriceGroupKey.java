@@ -0,0 +1,63 @@
+package com.prigozhaev.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The {@code PriceGroupKey} class represents the key of a price group.
+ * <p>
+ * Prices with the same product code, number and department form a group:
+ * only one price from the group can act at one moment in time, so prices
+ * of different groups never affect each other when merging.
+ * <p>
+ * Keys are ordered by product code, then by number, then by department.
+ *
+ * @see Price
+ */
+
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class PriceGroupKey implements Comparable<PriceGroupKey> {
+
+    private final String productCode;
+
+    private final int number;
+
+    private final int depart;
+
+    /**
+     * Standard constructor for initializing an {@code PriceGroupKey} object.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     */
+    public PriceGroupKey(String productCode, int number, int depart) {
+        this.productCode = productCode;
+        this.number = number;
+        this.depart = depart;
+    }
+
+    /**
+     * Returns the key of the group the price belongs to.
+     *
+     * @param price the price
+     * @return the price group key
+     */
+    public static PriceGroupKey of(Price price) {
+        return new PriceGroupKey(price.getProductCode(), price.getNumber(), price.getDepart());
+    }
+
+    @Override
+    public int compareTo(PriceGroupKey other) {
+        int result = productCode.compareTo(other.productCode);
+        if (result == 0)
+            result = Integer.compare(number, other.number);
+        if (result == 0)
+            result = Integer.compare(depart, other.depart);
+        return result;
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.prigozhaev.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ProductCodeDictionary} class maps product codes to dense int ids.
+ * <p>
+ * Every distinct code is stored once and gets the next id in the order the codes are added,
+ * so a dictionary shared by the batches and merges of an import turns product code comparison
+ * and hashing into integer operations. Together with the price number and department, the id
+ * is packed into a primitive {@code long} group key:
+ * <pre>
+ * | product id: 32 bits | number: 16 bits | department: 16 bits |
+ * </pre>
+ * The number and the department may be negative: each is stored offset by {@link Short#MIN_VALUE},
+ * so any value of the {@code short} range fits and packed keys still compare like the product id,
+ * then the number, then the department.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @see PriceGroupKey
+ */
+
+public final class ProductCodeDictionary {
+
+    /**
+     * The smallest price number or department number a packed group key can hold.
+     */
+    public static final int MIN_PACKED_NUMBER = Short.MIN_VALUE;
+
+    /**
+     * The largest price number or department number a packed group key can hold.
+     */
+    public static final int MAX_PACKED_NUMBER = Short.MAX_VALUE;
+
+    private static final int NUMBER_MASK = 0xFFFF;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> codes = new ArrayList<>();
+
+    /**
+     * Returns the id of the product code, adding the code to the dictionary if needed.
+     *
+     * @param productCode the product code
+     * @return the dense id of the product code
+     */
+    public int id(String productCode) {
+        Integer id = ids.get(productCode);
+        if (id == null) {
+            id = codes.size();
+            ids.put(productCode, id);
+            codes.add(productCode);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the product code without adding it to the dictionary.
+     *
+     * @param productCode the product code
+     * @return the dense id of the product code, or {@code -1} if the code is unknown
+     */
+    public int find(String productCode) {
+        Integer id = ids.get(productCode);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the product code by its id.
+     *
+     * @param id the id of the product code
+     * @return the product code
+     * @throws IndexOutOfBoundsException if the id is unknown to this dictionary
+     */
+    public String code(int id) {
+        return codes.get(id);
+    }
+
+    /**
+     * Returns the number of distinct product codes in the dictionary.
+     *
+     * @return the size of the dictionary
+     */
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * Returns the packed key of the group the price belongs to,
+     * adding the product code to the dictionary if needed.
+     *
+     * @param price the price
+     * @return the packed group key
+     * @throws IllegalArgumentException if the number or the department does not fit into the key
+     */
+    public long groupKey(Price price) {
+        return pack(id(price.getProductCode()), price.getNumber(), price.getDepart());
+    }
+
+    /**
+     * Packs the product id, the price number and the department number into a group key.
+     *
+     * @param productId the id of the product code
+     * @param number    the price number
+     * @param depart    the department number
+     * @return the packed group key
+     * @throws IllegalArgumentException if the product id is negative, or the number or the department
+     *                                  is out of the range from {@link #MIN_PACKED_NUMBER} to {@link #MAX_PACKED_NUMBER}
+     */
+    public static long pack(int productId, int number, int depart) {
+        if (productId < 0)
+            throw new IllegalArgumentException("Product id is negative: " + productId);
+        if (number < MIN_PACKED_NUMBER || number > MAX_PACKED_NUMBER)
+            throw new IllegalArgumentException("Price number does not fit into a group key: " + number);
+        if (depart < MIN_PACKED_NUMBER || depart > MAX_PACKED_NUMBER)
+            throw new IllegalArgumentException("Department number does not fit into a group key: " + depart);
+        return (long) productId << 32 | (long) (number - MIN_PACKED_NUMBER) << 16 | depart - MIN_PACKED_NUMBER;
+    }
+
+    public static int productId(long groupKey) {
+        return (int) (groupKey >>> 32);
+    }
+
+    public static int number(long groupKey) {
+        return ((int) (groupKey >>> 16) & NUMBER_MASK) + MIN_PACKED_NUMBER;
+    }
+
+    public static int depart(long groupKey) {
+        return ((int) groupKey & NUMBER_MASK) + MIN_PACKED_NUMBER;
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.prigozhaev.persistence;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * The {@code JdbcPriceRepository} class stores the price history in a database table through JDBC.
+ * <p>
+ * The table is expected to look like:
+ * <pre>
+ * CREATE TABLE PRICE (
+ *     ID           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+ *     PRODUCT_CODE VARCHAR(255) NOT NULL,
+ *     PRICE_NUMBER INT          NOT NULL,
+ *     DEPART       INT          NOT NULL,
+ *     BEGIN_DATE   TIMESTAMP    NOT NULL,
+ *     END_DATE     TIMESTAMP    NOT NULL,
+ *     PRICE_VALUE  BIGINT
+ * )
+ * </pre>
+ * <p>
+ * A changeset is written in a single transaction with batched statements: deletes and
+ * updates are keyed by {@link Price#getId()}, and a delete or an update that matches no row
+ * fails the whole transaction. The prices of the changeset are never modified: the inserted prices
+ * are returned as copies carrying their generated ids once the transaction is committed, so immutable
+ * prices can be written as well and a failed write leaves no ids of rolled back rows behind.
+ * <p>
+ * The start and end times are stored as UTC timestamps, so the stored values do not depend
+ * on the default time zone of the JVM.
+ *
+ * @see com.prigozhaev.util.PriceStore#apply(Collection)
+ * @see com.prigozhaev.util.PriceManager#diff(Collection, Collection)
+ */
+
+public class JdbcPriceRepository {
+
+    /**
+     * The default number of statements sent to the database in one batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String SELECT = "SELECT ID, PRODUCT_CODE, PRICE_NUMBER, DEPART, BEGIN_DATE, END_DATE, PRICE_VALUE FROM PRICE";
+    private static final String SELECT_GROUP = SELECT + " WHERE PRODUCT_CODE = ? AND PRICE_NUMBER = ? AND DEPART = ? ORDER BY BEGIN_DATE";
+    private static final String INSERT = "INSERT INTO PRICE (PRODUCT_CODE, PRICE_NUMBER, DEPART, BEGIN_DATE, END_DATE, PRICE_VALUE) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE PRICE SET BEGIN_DATE = ?, END_DATE = ?, PRICE_VALUE = ? WHERE ID = ?";
+    private static final String DELETE = "DELETE FROM PRICE WHERE ID = ?";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final DataSource dataSource;
+    private final int batchSize;
+
+    /**
+     * Constructs a repository with the default batch size.
+     *
+     * @param dataSource the data source of the database
+     */
+    public JdbcPriceRepository(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a repository.
+     *
+     * @param dataSource the data source of the database
+     * @param batchSize  the number of statements sent to the database in one batch
+     * @throws IllegalArgumentException if the batch size is not positive
+     */
+    public JdbcPriceRepository(DataSource dataSource, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads the whole price history.
+     *
+     * @return a new list of the prices
+     * @throws SQLException if a database access error occurs
+     */
+    public List<Price> findAll() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(SELECT)) {
+            return read(resultSet);
+        }
+    }
+
+    /**
+     * Reads the prices of one group.
+     *
+     * @param key the price group key
+     * @return a new list of the prices sorted by the start date
+     * @throws SQLException if a database access error occurs
+     * @see com.prigozhaev.util.PriceGroupLoader
+     */
+    public List<Price> findByGroup(PriceGroupKey key) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_GROUP)) {
+            statement.setString(1, key.getProductCode());
+            statement.setInt(2, key.getNumber());
+            statement.setInt(3, key.getDepart());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return read(resultSet);
+            }
+        }
+    }
+
+    /**
+     * Writes the changeset in a single transaction.
+     * <p>
+     * Removed prices without an id are not stored, so they are skipped;
+     * updated prices without an id are inserted. A {@link com.prigozhaev.util.PriceStore} that made
+     * the changeset must be given the returned copies through
+     * {@link com.prigozhaev.util.PriceStore#assignIds(Collection)} before its next apply,
+     * or its later changes of the new prices will not find their rows.
+     *
+     * @param changeset the changes made to the price history
+     * @return a new list of copies of the inserted prices, followed by the updated prices without an id,
+     * carrying their generated ids; see {@link Price#withId(Long)}
+     * @throws SQLException if a database access error occurs, or a removed or updated price
+     *                      is not found by its id; the transaction is rolled back
+     */
+    public List<Price> write(PriceChangeset changeset) throws SQLException {
+        if (changeset.isEmpty())
+            return new ArrayList<>();
+
+        List<Price> inserted = new ArrayList<>(changeset.getInserted());
+        List<Price> updated = new ArrayList<>(changeset.getUpdated().size());
+        for (Price price : changeset.getUpdated())
+            (price.getId() == null ? inserted : updated).add(price);
+
+        List<Price> removed = new ArrayList<>(changeset.getRemoved().size());
+        for (Price price : changeset.getRemoved())
+            if (price.getId() != null)
+                removed.add(price);
+
+        long[] ids;
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                delete(connection, removed);
+                update(connection, updated);
+                ids = insert(connection, inserted);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        List<Price> stored = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++)
+            stored.add(inserted.get(i).withId(ids[i]));
+        return stored;
+    }
+
+    private void delete(Connection connection, List<Price> prices) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+            for (int i = 0; i < prices.size(); i++) {
+                statement.setLong(1, prices.get(i).getId());
+                statement.addBatch();
+                if ((i + 1) % batchSize == 0 || i == prices.size() - 1)
+                    checkUpdateCounts(statement.executeBatch(), prices, i);
+            }
+        }
+    }
+
+    private void update(Connection connection, List<Price> prices) throws SQLException {
+        Calendar utc = Calendar.getInstance(UTC);
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+            for (int i = 0; i < prices.size(); i++) {
+                Price price = prices.get(i);
+                statement.setTimestamp(1, new Timestamp(price.getBeginMillis()), utc);
+                statement.setTimestamp(2, new Timestamp(price.getEndMillis()), utc);
+                setValue(statement, 3, price.getValue());
+                statement.setLong(4, price.getId());
+                statement.addBatch();
+                if ((i + 1) % batchSize == 0 || i == prices.size() - 1)
+                    checkUpdateCounts(statement.executeBatch(), prices, i);
+            }
+        }
+    }
+
+    /**
+     * Inserts the prices and returns their generated ids.
+     */
+    private long[] insert(Connection connection, List<Price> prices) throws SQLException {
+        long[] ids = new long[prices.size()];
+        Calendar utc = Calendar.getInstance(UTC);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT, new String[]{"ID"})) {
+            int batchStart = 0;
+            for (int i = 0; i < prices.size(); i++) {
+                Price price = prices.get(i);
+                statement.setString(1, price.getProductCode());
+                statement.setInt(2, price.getNumber());
+                statement.setInt(3, price.getDepart());
+                statement.setTimestamp(4, new Timestamp(price.getBeginMillis()), utc);
+                statement.setTimestamp(5, new Timestamp(price.getEndMillis()), utc);
+                setValue(statement, 6, price.getValue());
+                statement.addBatch();
+
+                if ((i + 1) % batchSize == 0 || i == prices.size() - 1) {
+                    statement.executeBatch();
+                    int j = batchStart;
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        while (j <= i && keys.next())
+                            ids[j++] = keys.getLong(1);
+                    }
+                    if (j <= i)
+                        throw new SQLException("No generated id returned for " + prices.get(j));
+                    batchStart = i + 1;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Checks that every statement of the batch ending with the price at the index changed a row.
+     */
+    private static void checkUpdateCounts(int[] counts, List<Price> prices, int last) throws SQLException {
+        int first = last - counts.length + 1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED)
+                throw new SQLException("Price not found by id: " + prices.get(first + i));
+        }
+    }
+
+    private static List<Price> read(ResultSet resultSet) throws SQLException {
+        List<Price> prices = new ArrayList<>();
+        Calendar utc = Calendar.getInstance(UTC);
+        while (resultSet.next()) {
+            long value = resultSet.getLong(7);
+            boolean hasValue = !resultSet.wasNull();
+            Price price = new Price(resultSet.getString(2), resultSet.getInt(3), resultSet.getInt(4),
+                    resultSet.getTimestamp(5, utc).getTime(), resultSet.getTimestamp(6, utc).getTime(),
+                    hasValue ? value : null);
+            price.setId(resultSet.getLong(1));
+            prices.add(price);
+        }
+        return prices;
+    }
+
+    private static void setValue(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value == null)
+            statement.setNull(index, Types.BIGINT);
+        else
+            statement.setLong(index, value);
+    }
+
+}
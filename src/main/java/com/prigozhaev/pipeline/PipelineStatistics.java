@@ -0,0 +1,61 @@
+package com.prigozhaev.pipeline;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code PipelineStatistics} class is a snapshot of the progress of a {@link PriceImportPipeline}.
+ * <p>
+ * The counters are cumulative since the pipeline was started; the queue depths are
+ * the number of elements waiting between the stages at the moment of the snapshot.
+ *
+ * @see PriceImportPipeline#getStatistics()
+ */
+
+@Getter
+@ToString
+public final class PipelineStatistics {
+
+    private final long inputs;
+
+    private final long parsedPrices;
+
+    private final long mergedPrices;
+
+    private final long publishedChangesets;
+
+    private final long elapsedNanos;
+
+    private final int inputQueueDepth;
+
+    private final int shardQueueDepth;
+
+    private final int maxShardQueueDepth;
+
+    private final int sinkQueueDepth;
+
+    PipelineStatistics(long inputs, long parsedPrices, long mergedPrices, long publishedChangesets, long elapsedNanos,
+                       int inputQueueDepth, int shardQueueDepth, int maxShardQueueDepth, int sinkQueueDepth) {
+        this.inputs = inputs;
+        this.parsedPrices = parsedPrices;
+        this.mergedPrices = mergedPrices;
+        this.publishedChangesets = publishedChangesets;
+        this.elapsedNanos = elapsedNanos;
+        this.inputQueueDepth = inputQueueDepth;
+        this.shardQueueDepth = shardQueueDepth;
+        this.maxShardQueueDepth = maxShardQueueDepth;
+        this.sinkQueueDepth = sinkQueueDepth;
+    }
+
+    /**
+     * Returns the end-to-end throughput of the pipeline.
+     *
+     * @return the number of merged prices per second since the pipeline was started
+     */
+    public double getPricesPerSecond() {
+        return elapsedNanos == 0 ? 0 : mergedPrices * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+}
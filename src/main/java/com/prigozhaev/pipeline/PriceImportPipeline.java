@@ -0,0 +1,473 @@
+package com.prigozhaev.pipeline;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+import com.prigozhaev.util.PriceStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The {@code PriceImportPipeline} class imports a continuous feed of price files in stages:
+ * parse, partition by price group, merge and publish.
+ * <p>
+ * One parser thread turns each submitted input into prices and partitions them by the hash
+ * of the {@link PriceGroupKey}. Every partition is owned by a shard worker thread that merges
+ * its prices into its own {@link PriceStore}, so the prices of a group are always merged by the
+ * same thread in the order they were submitted. Every shard reports the changes an input made
+ * to its partitions, even when there are none, and a single sink thread folds the reports of all
+ * shards into one changeset per input. The sink receives every input together with its changeset
+ * in the order the inputs were submitted, once the input is fully applied.
+ * <p>
+ * The sink returns the stored copies of the new prices carrying their generated ids, and the sink
+ * thread hands them back to the shards that made the prices. A shard that reported new prices waits
+ * for their ids before it applies its next partition, so that its later changes are keyed by the ids:
+ * the parsing of the next inputs still overlaps the sink, the merging of them does not.
+ * <p>
+ * The stages are connected by bounded queues and every hand-over blocks while the next queue
+ * is full, so a slow sink throttles the shard workers, the parser and finally
+ * {@link #submit(Object)} instead of letting the queues grow.
+ * <p>
+ * If a stage fails, including with an {@link Error} or an interrupt, the pipeline records the failure,
+ * stops processing and drains the queues: every stage always hands the end of its output over to the
+ * next one, and a hand-over to a stage whose thread has died is dropped, so no thread waits forever.
+ * The failure is reported from the next call of {@link #submit(Object)} or {@link #close()}.
+ *
+ * @param <T> the type of the inputs
+ * @see PriceStore#apply(Collection)
+ */
+
+public class PriceImportPipeline<T> implements AutoCloseable {
+
+    private static final Object END = new Object();
+    private static final long HAND_OVER_MILLIS = 100;
+
+    private final Function<? super T, ? extends Collection<Price>> parser;
+    private final BiFunction<? super T, ? super PriceChangeset, ? extends Collection<Price>> sink;
+
+    private final BlockingQueue<Object> inputQueue;
+    private final List<BlockingQueue<Partition<T>>> shardQueues;
+    private final BlockingQueue<ShardChangeset<T>> sinkQueue;
+    private final List<BlockingQueue<List<Price>>> idQueues;
+    private final List<PriceStore> stores;
+    private final Partition<T> endOfPrices = new Partition<>(-1, null, Collections.emptyList());
+    private final ShardChangeset<T> endOfChanges = new ShardChangeset<>(-1, -1, null, null, false);
+
+    private final Thread parserThread;
+    private final List<Thread> shardThreads;
+    private final Thread sinkThread;
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final LongAdder inputs = new LongAdder();
+    private final LongAdder parsedPrices = new LongAdder();
+    private final LongAdder mergedPrices = new LongAdder();
+    private final LongAdder publishedChangesets = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs and starts a pipeline importing into an empty price history.
+     *
+     * @param parser        the function turning an input into prices
+     * @param sink          the consumer of every input and the changes it made, returning the stored copies
+     *                      of the new prices; see {@link PriceStore#assignIds(Collection)}
+     * @param shards        the number of shard worker threads
+     * @param queueCapacity the capacity of every queue between the stages
+     */
+    public PriceImportPipeline(Function<? super T, ? extends Collection<Price>> parser,
+                               BiFunction<? super T, ? super PriceChangeset, ? extends Collection<Price>> sink,
+                               int shards, int queueCapacity) {
+        this(Collections.emptyList(), parser, sink, shards, queueCapacity);
+    }
+
+    /**
+     * Constructs and starts a pipeline importing into the price history.
+     *
+     * @param existingPrices the collection of available prices
+     * @param parser         the function turning an input into prices
+     * @param sink           the consumer of every input and the changes it made, returning the stored copies
+     *                       of the new prices, or an empty collection if the prices are not stored;
+     *                       see {@link PriceStore#assignIds(Collection)}
+     * @param shards         the number of shard worker threads
+     * @param queueCapacity  the capacity of every queue between the stages
+     * @throws IllegalArgumentException if the number of shards or the queue capacity is not positive
+     */
+    public PriceImportPipeline(Collection<Price> existingPrices, Function<? super T, ? extends Collection<Price>> parser,
+                               BiFunction<? super T, ? super PriceChangeset, ? extends Collection<Price>> sink,
+                               int shards, int queueCapacity) {
+        if (shards < 1)
+            throw new IllegalArgumentException("Number of shards must be positive: " + shards);
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+
+        this.parser = parser;
+        this.sink = sink;
+        this.inputQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.sinkQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.shardQueues = new ArrayList<>(shards);
+        this.idQueues = new ArrayList<>(shards);
+        this.stores = new ArrayList<>(shards);
+
+        List<List<Price>> partitions = partition(existingPrices, shards);
+        for (int shard = 0; shard < shards; shard++) {
+            shardQueues.add(new ArrayBlockingQueue<>(queueCapacity));
+            idQueues.add(new ArrayBlockingQueue<>(1));
+            stores.add(new PriceStore(partitions.get(shard)));
+        }
+
+        // every thread is created before any is started, so a stage can always check its consumer
+        this.sinkThread = thread("price-import-sink", this::publish, () -> {
+        });
+        this.shardThreads = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int index = shard;
+            shardThreads.add(thread("price-import-shard-" + shard, () -> merge(index),
+                    () -> forward(sinkQueue, endOfChanges, sinkThread)));
+        }
+        this.parserThread = thread("price-import-parser", this::parse, () -> {
+            for (int shard = 0; shard < shards; shard++)
+                forward(shardQueues.get(shard), endOfPrices, shardThreads.get(shard));
+        });
+        for (Thread thread : threads)
+            thread.start();
+    }
+
+    /**
+     * Submits an input to the pipeline, blocking while the input queue is full.
+     *
+     * @param input the input to import
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the pipeline is closed or a stage has failed
+     */
+    public void submit(T input) throws InterruptedException {
+        if (closed)
+            throw new IllegalStateException("Pipeline is closed");
+        checkFailure();
+        if (!offer(inputQueue, input, parserThread)) {
+            checkFailure();
+            throw new IllegalStateException("Pipeline is stopped");
+        }
+        inputs.increment();
+    }
+
+    /**
+     * Waits for all submitted inputs to be published and stops the threads of the pipeline.
+     * <p>
+     * If the calling thread is interrupted while waiting, the method returns early with the
+     * interrupt status set. The pipeline still finishes the submitted inputs in the background,
+     * and a later call waits for them again.
+     *
+     * @throws IllegalStateException if a stage has failed
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            forward(inputQueue, END, parserThread);
+        }
+        try {
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        checkFailure();
+    }
+
+    /**
+     * Returns all prices of the price history, shard by shard.
+     * The history is complete only after the pipeline is closed.
+     *
+     * @return a new list of the prices
+     * @throws IllegalStateException if the pipeline is not closed
+     */
+    public List<Price> getPrices() {
+        if (!closed || threads.stream().anyMatch(Thread::isAlive))
+            throw new IllegalStateException("Pipeline is not closed");
+        List<Price> prices = new ArrayList<>();
+        for (PriceStore store : stores)
+            prices.addAll(store.getPrices());
+        return prices;
+    }
+
+    /**
+     * Returns the current statistics of the pipeline.
+     *
+     * @return a new statistics snapshot
+     */
+    public PipelineStatistics getStatistics() {
+        int shardQueueDepth = 0;
+        int maxShardQueueDepth = 0;
+        for (BlockingQueue<Partition<T>> queue : shardQueues) {
+            int depth = queue.size();
+            shardQueueDepth += depth;
+            maxShardQueueDepth = Math.max(maxShardQueueDepth, depth);
+        }
+        return new PipelineStatistics(inputs.sum(), parsedPrices.sum(), mergedPrices.sum(), publishedChangesets.sum(),
+                System.nanoTime() - startNanos, inputQueue.size(), shardQueueDepth, maxShardQueueDepth, sinkQueue.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void parse() throws InterruptedException {
+        long sequence = 0;
+        for (Object input = inputQueue.take(); input != END; input = inputQueue.take()) {
+            if (failure.get() != null)
+                continue;
+            try {
+                Collection<Price> prices = parser.apply((T) input);
+                parsedPrices.add(prices.size());
+                List<List<Price>> partitions = partition(prices, shardQueues.size());
+                for (int shard = 0; shard < partitions.size(); shard++)
+                    offer(shardQueues.get(shard), new Partition<>(sequence, (T) input, partitions.get(shard)), shardThreads.get(shard));
+                sequence++;
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void merge(int shard) throws InterruptedException {
+        BlockingQueue<Partition<T>> queue = shardQueues.get(shard);
+        PriceStore store = stores.get(shard);
+        for (Partition<T> partition = queue.take(); partition != endOfPrices; partition = queue.take()) {
+            if (failure.get() != null)
+                continue;
+            try {
+                PriceChangeset changeset = store.apply(partition.prices);
+                mergedPrices.add(partition.prices.size());
+                boolean awaitsIds = awaitsIds(changeset);
+                offer(sinkQueue, new ShardChangeset<>(shard, partition.sequence, partition.input, changeset, awaitsIds), sinkThread);
+                if (awaitsIds) {
+                    List<Price> storedPrices = takeIds(shard);
+                    if (storedPrices != null)
+                        store.assignIds(storedPrices);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Folds the changesets of all shards into one changeset per input. Every shard reports the inputs
+     * in the order they were submitted, so the inputs are completed in that order as well.
+     */
+    private void publish() throws InterruptedException {
+        int shards = shardQueues.size();
+        int runningShards = shards;
+        Map<Long, InputChangeset<T>> pending = new HashMap<>();
+        while (runningShards > 0) {
+            ShardChangeset<T> shardChangeset = sinkQueue.take();
+            if (shardChangeset == endOfChanges) {
+                runningShards--;
+                continue;
+            }
+            if (failure.get() != null)
+                continue;
+            InputChangeset<T> input = pending.computeIfAbsent(shardChangeset.sequence, sequence -> new InputChangeset<>(shardChangeset.input));
+            input.add(shardChangeset);
+            if (input.reports < shards)
+                continue;
+            pending.remove(shardChangeset.sequence);
+            try {
+                Collection<Price> storedPrices = sink.apply(input.input, input.toChangeset());
+                publishedChangesets.increment();
+                List<List<Price>> partitions = partition(storedPrices, shards);
+                for (int shard : input.shardsAwaitingIds)
+                    offer(idQueues.get(shard), partitions.get(shard), shardThreads.get(shard));
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the changes contain prices the database generates ids for.
+     */
+    private static boolean awaitsIds(PriceChangeset changeset) {
+        if (!changeset.getInserted().isEmpty())
+            return true;
+        for (Price price : changeset.getUpdated())
+            if (price.getId() == null)
+                return true;
+        return false;
+    }
+
+    /**
+     * Waits for the stored copies of the new prices of the shard.
+     *
+     * @return {@code null} if the pipeline has failed and no ids will come
+     */
+    private List<Price> takeIds(int shard) throws InterruptedException {
+        BlockingQueue<List<Price>> queue = idQueues.get(shard);
+        while (true) {
+            List<Price> storedPrices = queue.poll(HAND_OVER_MILLIS, TimeUnit.MILLISECONDS);
+            if (storedPrices != null)
+                return storedPrices;
+            if (failure.get() != null || !sinkThread.isAlive())
+                return null;
+        }
+    }
+
+    private static List<List<Price>> partition(Collection<Price> prices, int shards) {
+        List<List<Price>> partitions = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++)
+            partitions.add(new ArrayList<>());
+        for (Price price : prices)
+            partitions.get(Math.floorMod(PriceGroupKey.of(price).hashCode(), shards)).add(price);
+        return partitions;
+    }
+
+    /**
+     * Creates a thread running the stage that records any failure of the stage
+     * and always hands the end of the stage output over to the next stage.
+     */
+    private Thread thread(String name, Stage stage, Runnable end) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (Throwable e) {
+                fail(e);
+                if (e instanceof InterruptedException)
+                    Thread.currentThread().interrupt();
+            } finally {
+                end.run();
+            }
+        }, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        return thread;
+    }
+
+    /**
+     * Puts the element into the queue, waiting while the queue is full and its consumer is alive.
+     *
+     * @return {@code false} if the consumer has died and the element is dropped
+     */
+    private static <E> boolean offer(BlockingQueue<E> queue, E element, Thread consumer) throws InterruptedException {
+        while (!queue.offer(element, HAND_OVER_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!consumer.isAlive())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hands the end of a stage output over to the next stage, even if the current thread is interrupted.
+     */
+    private static <E> void forward(BlockingQueue<E> queue, E end, Thread consumer) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                offer(queue, end, consumer);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void fail(Throwable e) {
+        failure.compareAndSet(null, e);
+    }
+
+    private void checkFailure() {
+        Throwable e = failure.get();
+        if (e != null)
+            throw new IllegalStateException("Price import failed", e);
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * The prices of an input that belong to one shard.
+     */
+    private static final class Partition<T> {
+
+        private final long sequence;
+        private final T input;
+        private final List<Price> prices;
+
+        private Partition(long sequence, T input, List<Price> prices) {
+            this.sequence = sequence;
+            this.input = input;
+            this.prices = prices;
+        }
+
+    }
+
+    /**
+     * The changes an input made to the price groups of one shard.
+     */
+    private static final class ShardChangeset<T> {
+
+        private final int shard;
+        private final long sequence;
+        private final T input;
+        private final PriceChangeset changeset;
+        private final boolean awaitsIds;
+
+        private ShardChangeset(int shard, long sequence, T input, PriceChangeset changeset, boolean awaitsIds) {
+            this.shard = shard;
+            this.sequence = sequence;
+            this.input = input;
+            this.changeset = changeset;
+            this.awaitsIds = awaitsIds;
+        }
+
+    }
+
+    /**
+     * The changes of an input folded from the shards reported so far. The shards own disjoint
+     * price groups, so their changesets are simply concatenated.
+     */
+    private static final class InputChangeset<T> {
+
+        private final T input;
+        private final List<Price> inserted = new ArrayList<>();
+        private final List<Price> updated = new ArrayList<>();
+        private final List<Price> removed = new ArrayList<>();
+        private final List<Integer> shardsAwaitingIds = new ArrayList<>();
+        private int reports;
+
+        private InputChangeset(T input) {
+            this.input = input;
+        }
+
+        private void add(ShardChangeset<T> shardChangeset) {
+            PriceChangeset changeset = shardChangeset.changeset;
+            inserted.addAll(changeset.getInserted());
+            updated.addAll(changeset.getUpdated());
+            removed.addAll(changeset.getRemoved());
+            if (shardChangeset.awaitsIds)
+                shardsAwaitingIds.add(shardChangeset.shard);
+            reports++;
+        }
+
+        private PriceChangeset toChangeset() {
+            return new PriceChangeset(inserted, updated, removed);
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ActivePriceIndex} class answers which price acts for a product at a moment in time.
+ * <p>
+ * The index is built once from merged prices: every price group is kept as arrays sorted
+ * by the start time, so a lookup is a hash lookup of the group followed by a binary search,
+ * {@code O(log n)} in the size of the group.
+ * <p>
+ * The index is immutable, so any number of threads can read it without locking.
+ * A new index is built beside the current one and replaces it when ready.
+ *
+ * @see PriceManager#merge(Collection, Collection)
+ */
+
+public final class ActivePriceIndex {
+
+    private final Map<PriceGroupKey, Group> groups;
+
+    private ActivePriceIndex(Map<PriceGroupKey, Group> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Builds the index from merged prices.
+     *
+     * @param prices the merged prices
+     * @return a new index
+     * @throws IllegalArgumentException if the price action periods of prices of one group intersect
+     */
+    public static ActivePriceIndex build(Collection<Price> prices) {
+        Map<PriceGroupKey, List<Price>> pricesByGroup = PriceManager.groupByKey(prices);
+        Map<PriceGroupKey, Group> groups = new HashMap<>(pricesByGroup.size() * 4 / 3 + 1);
+        pricesByGroup.forEach((key, group) -> groups.put(key, new Group(group)));
+        return new ActivePriceIndex(groups);
+    }
+
+    /**
+     * Returns the price acting at the moment in time.
+     *
+     * @param productCode the unique product code
+     * @param number      the price number
+     * @param depart      the department number
+     * @param instant     the moment in time
+     * @return the acting price, or {@code null} if no price acts at that moment
+     */
+    public Price activePrice(String productCode, int number, int depart, Date instant) {
+        return activePrice(productCode, number, depart, instant.getTime());
+    }
+
+    /**
+     * Returns the price acting at the moment in time.
+     *
+     * @param productCode   the unique product code
+     * @param number        the price number
+     * @param depart        the department number
+     * @param instantMillis the moment in time in milliseconds since the epoch
+     * @return the acting price, or {@code null} if no price acts at that moment
+     */
+    public Price activePrice(String productCode, int number, int depart, long instantMillis) {
+        Group group = groups.get(new PriceGroupKey(productCode, number, depart));
+        return group == null ? null : group.activePrice(instantMillis);
+    }
+
+    /**
+     * Returns the prices acting at the moment in time for several products, e.g. for a whole receipt.
+     *
+     * @param productCodes  the product codes
+     * @param number        the price number
+     * @param depart        the department number
+     * @param instantMillis the moment in time in milliseconds since the epoch
+     * @return the acting prices by product code, in the order of the codes;
+     * products without an acting price are left out
+     */
+    public Map<String, Price> activePrices(Collection<String> productCodes, int number, int depart, long instantMillis) {
+        Map<String, Price> prices = new LinkedHashMap<>();
+        for (String productCode : productCodes) {
+            Price price = activePrice(productCode, number, depart, instantMillis);
+            if (price != null)
+                prices.put(productCode, price);
+        }
+        return prices;
+    }
+
+    /**
+     * Returns the number of price groups in the index.
+     *
+     * @return the number of price groups
+     */
+    public int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * The prices of one group sorted by the start time.
+     */
+    private static final class Group {
+
+        private final long[] begins;
+        private final long[] ends;
+        private final Price[] prices;
+
+        Group(List<Price> group) {
+            List<Price> sorted = new ArrayList<>(group);
+            sorted.sort(Comparator.comparingLong(Price::getBeginMillis));
+
+            begins = new long[sorted.size()];
+            ends = new long[sorted.size()];
+            prices = sorted.toArray(new Price[0]);
+
+            for (int i = 0; i < prices.length; i++) {
+                begins[i] = prices[i].getBeginMillis();
+                ends[i] = prices[i].getEndMillis();
+                if (i > 0 && begins[i] < ends[i - 1])
+                    throw new IllegalArgumentException("Price action periods intersect: " + prices[i - 1] + ", " + prices[i]);
+            }
+        }
+
+        Price activePrice(long instant) {
+            int low = 0;
+            int high = begins.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (begins[middle] <= instant)
+                    low = middle + 1;
+                else
+                    high = middle - 1;
+            }
+            return high >= 0 && instant < ends[high] ? prices[high] : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The {@code BufferedPriceMerger} class merges price collections by the rules of
+ * {@link PriceManager#merge(Collection, Collection)} on reusable buffers.
+ * <p>
+ * The prices are grouped with an open-addressing table and a counting sort over scratch arrays,
+ * and every touched group is merged on a reusable {@link PriceSegments}. Once the buffers have
+ * grown to the size of the largest merge, a merge allocates nothing but the result list and
+ * the prices whose action period was changed. Existing and incoming prices that survive the
+ * merge unchanged are returned as is.
+ * <p>
+ * The groups of the result keep the order of {@link PriceManager#merge(Collection, Collection)}:
+ * the groups of the existing prices in the order they first appear, followed by the new groups
+ * of the incoming prices.
+ * <p>
+ * The class is not thread-safe: use one instance per thread.
+ *
+ * @see PriceManager#merge(Collection, Collection)
+ */
+
+public final class BufferedPriceMerger {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final PriceSegments segments = new PriceSegments();
+
+    private int size;
+    private Price[] prices = new Price[DEFAULT_CAPACITY];
+    private int[] groupOf = new int[DEFAULT_CAPACITY];
+    private int[] order = new int[DEFAULT_CAPACITY];
+
+    private int groupCount;
+    private int[] representatives = new int[DEFAULT_CAPACITY];
+    private int[] groupStarts = new int[DEFAULT_CAPACITY + 1];
+    private int[] groupCursors = new int[DEFAULT_CAPACITY];
+    private boolean[] touched = new boolean[DEFAULT_CAPACITY];
+
+    private int[] table = new int[DEFAULT_CAPACITY << 1];
+
+    /**
+     * The method merges two price collections like {@link PriceManager#merge(Collection, Collection)} does.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @return combined price collection
+     * @throws IllegalArgumentException if the incoming collections are null or empty,
+     *                                  or the price action period of a merged price is empty
+     */
+    public List<Price> merge(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+        int capacity = (existingPrices == null ? 0 : existingPrices.size()) + (incomingPrices == null ? 0 : incomingPrices.size());
+        List<Price> result = new ArrayList<>(capacity);
+        merge(existingPrices, incomingPrices, result);
+        return result;
+    }
+
+    /**
+     * The method merges two price collections like {@link PriceManager#merge(Collection, Collection)} does,
+     * appending the combined prices to the result list, so that the list can be reused as well.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @param result         the list the combined prices are appended to
+     * @throws IllegalArgumentException if the incoming collections are null or empty,
+     *                                  or the price action period of a merged price is empty
+     */
+    public void merge(Collection<Price> existingPrices, Collection<Price> incomingPrices, List<? super Price> result) {
+
+        if ((existingPrices == null || existingPrices.isEmpty()) && (incomingPrices == null || incomingPrices.isEmpty()))
+            throw new IllegalArgumentException("Missing valid data for merge");
+
+        if (existingPrices == null || existingPrices.isEmpty()) {
+            result.addAll(incomingPrices);
+            return;
+        }
+
+        if (incomingPrices == null || incomingPrices.isEmpty()) {
+            result.addAll(existingPrices);
+            return;
+        }
+
+        try {
+            load(existingPrices, incomingPrices);
+            group(existingPrices.size());
+            collect(existingPrices.size(), result);
+        } finally {
+            Arrays.fill(prices, 0, size, null);
+            segments.clear();
+        }
+    }
+
+    private void load(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+        size = 0;
+        ensureCapacity(existingPrices.size() + incomingPrices.size());
+        add(existingPrices);
+        add(incomingPrices);
+    }
+
+    private void add(Collection<Price> collection) {
+        if (collection instanceof List && collection instanceof RandomAccess) {
+            // indexed on purpose: copying a random access list allocates no iterator
+            List<Price> list = (List<Price>) collection;
+            for (int i = 0; i < list.size(); i++)
+                prices[size++] = list.get(i);
+        } else {
+            for (Price price : collection)
+                prices[size++] = price;
+        }
+    }
+
+    /**
+     * Numbers the groups in the order they first appear and orders the prices by the group
+     * with a stable counting sort, so the prices of a group keep the order of the input.
+     */
+    private void group(int existingSize) {
+        int mask = table.length - 1;
+        Arrays.fill(table, -1);
+        groupCount = 0;
+
+        for (int i = 0; i < size; i++) {
+            Price price = prices[i];
+            int slot = hash(price) & mask;
+            int group;
+            while (true) {
+                group = table[slot];
+                if (group == -1) {
+                    group = groupCount++;
+                    table[slot] = group;
+                    representatives[group] = i;
+                    groupStarts[group] = 0;
+                    touched[group] = false;
+                    break;
+                }
+                if (sameGroup(prices[representatives[group]], price))
+                    break;
+                slot = (slot + 1) & mask;
+            }
+            groupOf[i] = group;
+            groupStarts[group]++;
+            if (i >= existingSize)
+                touched[group] = true;
+        }
+
+        int offset = 0;
+        for (int group = 0; group < groupCount; group++) {
+            int count = groupStarts[group];
+            groupStarts[group] = offset;
+            groupCursors[group] = offset;
+            offset += count;
+        }
+        groupStarts[groupCount] = offset;
+
+        for (int i = 0; i < size; i++)
+            order[groupCursors[groupOf[i]]++] = i;
+    }
+
+    private void collect(int existingSize, List<? super Price> result) {
+        for (int group = 0; group < groupCount; group++) {
+            int from = groupStarts[group];
+            int to = groupStarts[group + 1];
+
+            if (!touched[group]) {
+                for (int i = from; i < to; i++)
+                    result.add(prices[order[i]]);
+                continue;
+            }
+
+            segments.clear();
+            for (int i = from; i < to; i++) {
+                Price price = prices[order[i]];
+                if (order[i] < existingSize && price.getEndMillis() <= price.getBeginMillis())
+                    continue;
+                Long value = price.getValue();
+                segments.apply(price.getBeginMillis(), price.getEndMillis(),
+                        value == null ? 0 : value, value != null, price.getId(), price);
+            }
+
+            for (int i = 0; i < segments.size(); i++) {
+                Price source = segments.source(i);
+                long begin = segments.begin(i);
+                long end = segments.end(i);
+                Long id = segments.id(i);
+                if (source.getBeginMillis() == begin && source.getEndMillis() == end && Objects.equals(source.getId(), id)) {
+                    result.add(source);
+                } else {
+                    result.add(source.withPeriod(begin, end, id));
+                }
+            }
+        }
+    }
+
+    private static int hash(Price price) {
+        int hash = Objects.hashCode(price.getProductCode());
+        hash = 31 * hash + price.getNumber();
+        hash = 31 * hash + price.getDepart();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameGroup(Price price, Price otherPrice) {
+        return Objects.equals(price.getProductCode(), otherPrice.getProductCode())
+                && price.getNumber() == otherPrice.getNumber()
+                && price.getDepart() == otherPrice.getDepart();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > prices.length) {
+            int newCapacity = Math.max(capacity, prices.length << 1);
+            prices = new Price[newCapacity];
+            groupOf = new int[newCapacity];
+            order = new int[newCapacity];
+            representatives = new int[newCapacity];
+            groupStarts = new int[newCapacity + 1];
+            groupCursors = new int[newCapacity];
+            touched = new boolean[newCapacity];
+        }
+        int tableCapacity = Integer.highestOneBit(Math.max(capacity, 1) << 1) << 1;
+        if (tableCapacity > table.length)
+            table = new int[tableCapacity];
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.prigozhaev.util;
+
+import java.util.Collection;
+
+/**
+ * The {@code MergeMetrics} interface is the instrumentation callback of the price merge.
+ * <p>
+ * All methods do nothing by default, so an implementation overrides only what it needs.
+ * The methods are called on the merging thread.
+ *
+ * @see PriceManager#merge(Collection, Collection, MergeMetrics)
+ * @see MergeStatistics
+ */
+
+public interface MergeMetrics {
+
+    /**
+     * The metrics that ignore everything.
+     */
+    MergeMetrics NO_OP = new MergeMetrics() {
+    };
+
+    /**
+     * Called when a price group touched by the incoming prices is merged.
+     *
+     * @param existingSize the number of existing prices in the group
+     * @param incomingSize the number of incoming prices in the group
+     */
+    default void groupMerged(int existingSize, int incomingSize) {
+    }
+
+    /**
+     * Called every time a branch of the merge rules is applied.
+     *
+     * @param rule the applied rule
+     */
+    default void ruleApplied(MergeRule rule) {
+    }
+
+    /**
+     * Called when a phase of the merge is completed.
+     *
+     * @param phase the completed phase
+     * @param nanos the time the phase took, in nanoseconds
+     */
+    default void phaseCompleted(MergePhase phase, long nanos) {
+    }
+
+    /**
+     * Called when the merge is completed.
+     *
+     * @param incomingPrices the number of incoming prices processed
+     * @param nanos          the time the merge took, in nanoseconds
+     */
+    default void mergeCompleted(int incomingPrices, long nanos) {
+    }
+
+}
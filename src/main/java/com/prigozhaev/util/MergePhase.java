@@ -0,0 +1,24 @@
+package com.prigozhaev.util;
+
+/**
+ * The {@code MergePhase} enum lists the phases of {@link PriceManager#merge(java.util.Collection, java.util.Collection)}.
+ */
+
+public enum MergePhase {
+
+    /**
+     * Splitting the existing and the incoming prices into groups.
+     */
+    GROUPING,
+
+    /**
+     * Merging the groups touched by the incoming prices.
+     */
+    MERGING,
+
+    /**
+     * Collecting the merged groups into the result.
+     */
+    COLLECTING
+
+}
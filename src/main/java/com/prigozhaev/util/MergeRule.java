@@ -0,0 +1,41 @@
+package com.prigozhaev.util;
+
+/**
+ * The {@code MergeRule} enum lists the branches of the price merge rules.
+ *
+ * @see PriceTimeline#apply(com.prigozhaev.model.Price)
+ */
+
+public enum MergeRule {
+
+    /**
+     * The incoming price is added as a new price: no existing price with the same value intersects it.
+     */
+    INSERT,
+
+    /**
+     * An existing price with the same value is extended by the period of the incoming price.
+     */
+    EXTEND,
+
+    /**
+     * One more existing price with the same value is coalesced into the extended price.
+     */
+    COALESCE,
+
+    /**
+     * An existing price with another value is split in two around the incoming price.
+     */
+    SPLIT,
+
+    /**
+     * An existing price with another value is shortened on one side by the incoming price.
+     */
+    CUT,
+
+    /**
+     * An existing price with another value is fully covered by the incoming price and removed.
+     */
+    COVER
+
+}
@@ -0,0 +1,171 @@
+package com.prigozhaev.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code MergeStatistics} class accumulates the metrics of price merges.
+ * <p>
+ * The counters are thread-safe, so one instance can be shared by concurrent merges.
+ * The instance can be exported through JMX as is:
+ * <pre>
+ * ManagementFactory.getPlatformMBeanServer()
+ *         .registerMBean(statistics, new ObjectName("com.prigozhaev:type=MergeStatistics"));
+ * </pre>
+ *
+ * @see PriceManager#merge(java.util.Collection, java.util.Collection, MergeMetrics)
+ */
+
+public class MergeStatistics implements MergeMetrics, MergeStatisticsMXBean {
+
+    private static final int HISTOGRAM_SIZE = 21;
+
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder incomingPrices = new LongAdder();
+    private final LongAdder mergeNanos = new LongAdder();
+    private final LongAdder[] rules = adders(MergeRule.values().length);
+    private final LongAdder[] phaseNanos = adders(MergePhase.values().length);
+    private final LongAdder[] groupSizes = adders(HISTOGRAM_SIZE);
+
+    @Override
+    public void groupMerged(int existingSize, int incomingSize) {
+        groups.increment();
+        int size = existingSize + incomingSize;
+        int bucket = size == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(size);
+        groupSizes[Math.min(bucket, HISTOGRAM_SIZE - 1)].increment();
+    }
+
+    @Override
+    public void ruleApplied(MergeRule rule) {
+        rules[rule.ordinal()].increment();
+    }
+
+    @Override
+    public void phaseCompleted(MergePhase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void mergeCompleted(int incomingPrices, long nanos) {
+        merges.increment();
+        this.incomingPrices.add(incomingPrices);
+        mergeNanos.add(nanos);
+    }
+
+    @Override
+    public long getMergeCount() {
+        return merges.sum();
+    }
+
+    @Override
+    public long getGroupCount() {
+        return groups.sum();
+    }
+
+    @Override
+    public long getIncomingPriceCount() {
+        return incomingPrices.sum();
+    }
+
+    @Override
+    public double getIncomingPricesPerSecond() {
+        long nanos = mergeNanos.sum();
+        return nanos == 0 ? 0 : incomingPrices.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Returns how many times the rule was applied.
+     *
+     * @param rule the merge rule
+     * @return the number of applications
+     */
+    public long getRuleCount(MergeRule rule) {
+        return rules[rule.ordinal()].sum();
+    }
+
+    @Override
+    public long getInsertCount() {
+        return getRuleCount(MergeRule.INSERT);
+    }
+
+    @Override
+    public long getExtendCount() {
+        return getRuleCount(MergeRule.EXTEND);
+    }
+
+    @Override
+    public long getCoalesceCount() {
+        return getRuleCount(MergeRule.COALESCE);
+    }
+
+    @Override
+    public long getSplitCount() {
+        return getRuleCount(MergeRule.SPLIT);
+    }
+
+    @Override
+    public long getCutCount() {
+        return getRuleCount(MergeRule.CUT);
+    }
+
+    @Override
+    public long getCoverCount() {
+        return getRuleCount(MergeRule.COVER);
+    }
+
+    /**
+     * Returns the total time spent in the phase.
+     *
+     * @param phase the merge phase
+     * @return the time in milliseconds
+     */
+    public long getPhaseMillis(MergePhase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()].sum());
+    }
+
+    @Override
+    public long getGroupingMillis() {
+        return getPhaseMillis(MergePhase.GROUPING);
+    }
+
+    @Override
+    public long getMergingMillis() {
+        return getPhaseMillis(MergePhase.MERGING);
+    }
+
+    @Override
+    public long getCollectingMillis() {
+        return getPhaseMillis(MergePhase.COLLECTING);
+    }
+
+    @Override
+    public long[] getGroupSizeHistogram() {
+        long[] histogram = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < HISTOGRAM_SIZE; i++)
+            histogram[i] = groupSizes[i].sum();
+        return histogram;
+    }
+
+    @Override
+    public void reset() {
+        merges.reset();
+        groups.reset();
+        incomingPrices.reset();
+        mergeNanos.reset();
+        for (LongAdder adder : rules)
+            adder.reset();
+        for (LongAdder adder : phaseNanos)
+            adder.reset();
+        for (LongAdder adder : groupSizes)
+            adder.reset();
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.prigozhaev.util;
+
+/**
+ * The management interface of {@link MergeStatistics}, exported as a JMX MXBean.
+ */
+
+public interface MergeStatisticsMXBean {
+
+    long getMergeCount();
+
+    long getGroupCount();
+
+    long getIncomingPriceCount();
+
+    double getIncomingPricesPerSecond();
+
+    long getInsertCount();
+
+    long getExtendCount();
+
+    long getCoalesceCount();
+
+    long getSplitCount();
+
+    long getCutCount();
+
+    long getCoverCount();
+
+    long getGroupingMillis();
+
+    long getMergingMillis();
+
+    long getCollectingMillis();
+
+    /**
+     * Returns the histogram of the sizes of the merged groups (existing and incoming prices together):
+     * the element {@code i} counts the groups of {@code 2^i} to {@code 2^(i+1) - 1} prices,
+     * the last element counts all larger groups.
+     *
+     * @return the group size histogram
+     */
+    long[] getGroupSizeHistogram();
+
+    /**
+     * Resets all counters.
+     */
+    void reset();
+
+}
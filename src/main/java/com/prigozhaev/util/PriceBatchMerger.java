@@ -0,0 +1,162 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.PriceBatch;
+import com.prigozhaev.model.ProductCodeDictionary;
+
+/**
+ * The {@code PriceBatchMerger} class merges price batches without materialising {@code Price} objects.
+ * <p>
+ * The rows of both batches are keyed by packed group keys of a common {@link ProductCodeDictionary}
+ * and ordered by the key with a stable sort over row indices, then the batches are walked group
+ * by group and every group is merged on reusable {@link PriceSegments}, which carry the ids of the rows
+ * like the merge of {@code Price} objects does. Batches sharing a dictionary need no translation of
+ * product ids, and the result shares their dictionary.
+ *
+ * @see PriceManager#mergeBatches(PriceBatch, PriceBatch)
+ */
+
+final class PriceBatchMerger {
+
+    private PriceBatchMerger() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    static PriceBatch merge(PriceBatch existingPrices, PriceBatch incomingPrices) {
+
+        ProductCodeDictionary dictionary = existingPrices.getDictionary() == incomingPrices.getDictionary()
+                ? existingPrices.getDictionary() : new ProductCodeDictionary();
+        PriceBatch result = new PriceBatch(existingPrices.size() + incomingPrices.size(), dictionary);
+
+        long[] existingKeys = groupKeys(existingPrices, dictionary);
+        long[] incomingKeys = groupKeys(incomingPrices, dictionary);
+        int[] existingRows = sortByGroup(existingKeys);
+        int[] incomingRows = sortByGroup(incomingKeys);
+
+        PriceSegments segments = new PriceSegments();
+
+        int existingIndex = 0;
+        int incomingIndex = 0;
+
+        while (existingIndex < existingRows.length || incomingIndex < incomingRows.length) {
+            int order;
+            if (incomingIndex == incomingRows.length)
+                order = -1;
+            else if (existingIndex == existingRows.length)
+                order = 1;
+            else
+                order = Long.compare(existingKeys[existingRows[existingIndex]], incomingKeys[incomingRows[incomingIndex]]);
+
+            int existingGroupEnd = order <= 0 ? groupEnd(existingKeys, existingRows, existingIndex) : existingIndex;
+            int incomingGroupEnd = order >= 0 ? groupEnd(incomingKeys, incomingRows, incomingIndex) : incomingIndex;
+
+            if (order < 0) {
+                long key = existingKeys[existingRows[existingIndex]];
+                for (int i = existingIndex; i < existingGroupEnd; i++) {
+                    int row = existingRows[i];
+                    add(result, key, existingPrices.getBeginMillis(row), existingPrices.getEndMillis(row),
+                            existingPrices.getValue(row), existingPrices.hasValue(row),
+                            existingPrices.getId(row), existingPrices.hasId(row));
+                }
+            } else {
+                segments.clear();
+                for (int i = existingIndex; i < existingGroupEnd; i++) {
+                    int row = existingRows[i];
+                    if (existingPrices.getEndMillis(row) > existingPrices.getBeginMillis(row))
+                        apply(segments, existingPrices, row);
+                }
+                for (int i = incomingIndex; i < incomingGroupEnd; i++)
+                    apply(segments, incomingPrices, incomingRows[i]);
+
+                long key = incomingKeys[incomingRows[incomingIndex]];
+                for (int i = 0; i < segments.size(); i++) {
+                    Long id = segments.id(i);
+                    add(result, key, segments.begin(i), segments.end(i), segments.value(i), segments.hasValue(i),
+                            id == null ? 0 : id, id != null);
+                }
+            }
+
+            existingIndex = existingGroupEnd;
+            incomingIndex = incomingGroupEnd;
+        }
+
+        return result;
+    }
+
+    private static void add(PriceBatch result, long key, long begin, long end, long value, boolean hasValue,
+                            long id, boolean hasId) {
+        result.add(ProductCodeDictionary.productId(key), ProductCodeDictionary.number(key), ProductCodeDictionary.depart(key),
+                begin, end, value, hasValue, id, hasId);
+    }
+
+    private static void apply(PriceSegments segments, PriceBatch batch, int row) {
+        segments.apply(batch.getBeginMillis(row), batch.getEndMillis(row), batch.getValue(row), batch.hasValue(row),
+                batch.hasId(row) ? batch.getId(row) : null, null);
+    }
+
+    /**
+     * Returns the packed group keys of the rows of the batch with the product ids of the dictionary.
+     */
+    private static long[] groupKeys(PriceBatch batch, ProductCodeDictionary dictionary) {
+        int[] ids = null;
+        if (batch.getDictionary() != dictionary) {
+            ids = new int[batch.productCount()];
+            for (int id = 0; id < ids.length; id++)
+                ids[id] = dictionary.id(batch.productCode(id));
+        }
+
+        long[] keys = new long[batch.size()];
+        for (int row = 0; row < keys.length; row++) {
+            int productId = batch.getProductId(row);
+            keys[row] = ProductCodeDictionary.pack(ids == null ? productId : ids[productId],
+                    batch.getNumber(row), batch.getDepart(row));
+        }
+        return keys;
+    }
+
+    private static int groupEnd(long[] keys, int[] rows, int from) {
+        int end = from + 1;
+        while (end < rows.length && keys[rows[end]] == keys[rows[from]])
+            end++;
+        return end;
+    }
+
+    /**
+     * Returns the row indices ordered by the group key. The sort is stable,
+     * so the rows of a group keep the order in which they were added to the batch.
+     */
+    private static int[] sortByGroup(long[] keys) {
+        int size = keys.length;
+        int[] rows = new int[size];
+        boolean sorted = true;
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+            if (row > 0 && sorted && keys[row - 1] > keys[row])
+                sorted = false;
+        }
+
+        if (sorted)
+            return rows;
+
+        int[] source = rows;
+        int[] target = new int[size];
+        for (int width = 1; width < size; width <<= 1) {
+            for (int low = 0; low < size; low += width << 1) {
+                int middle = Math.min(low + width, size);
+                int high = Math.min(low + (width << 1), size);
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++) {
+                    if (left < middle && (right == high || keys[source[left]] <= keys[source[right]]))
+                        target[i] = source[left++];
+                    else
+                        target[i] = source[right++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        return source;
+    }
+
+}
@@ -0,0 +1,274 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * The {@code PriceGroupCache} class keeps a bounded hot set of price groups in memory
+ * and loads the missing ones on demand through a {@link PriceGroupLoader}.
+ * <p>
+ * Every cached group has a weight, by default the number of its prices, and the least
+ * recently used groups are evicted once the total weight exceeds the maximum. A weigher
+ * returning {@code 1} for every group bounds the number of groups instead.
+ * <p>
+ * After a merge, only the groups it changed have to be invalidated: by the changeset of
+ * a {@link PriceStore} or by the incoming prices of {@link PriceManager#merge(Collection, Collection)}.
+ * <p>
+ * The class is thread-safe. A miss is loaded outside of the lock, so concurrent misses of the
+ * same group may load it more than once. Every load in flight is registered by its key, and
+ * invalidating a group discards the loads of that group only: a group loaded while it was
+ * invalidated is returned but not cached. The statistics can be exported through JMX as is.
+ *
+ * @see PriceGroupLoader
+ */
+
+public class PriceGroupCache implements PriceGroupCacheMXBean {
+
+    private static final Comparator<Price> BY_BEGIN = Comparator.comparingLong(Price::getBeginMillis);
+
+    private final PriceGroupLoader loader;
+    private final long maxWeight;
+    private final ToIntFunction<List<Price>> weigher;
+
+    private final Map<PriceGroupKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<PriceGroupKey, Object> loads = new HashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructs a cache weighing a group by the number of its prices.
+     *
+     * @param loader    the loader of the missing groups
+     * @param maxWeight the maximum total weight of the cached groups
+     */
+    public PriceGroupCache(PriceGroupLoader loader, long maxWeight) {
+        this(loader, maxWeight, prices -> Math.max(prices.size(), 1));
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param loader    the loader of the missing groups
+     * @param maxWeight the maximum total weight of the cached groups
+     * @param weigher   the function returning the weight of the prices of a group
+     * @throws IllegalArgumentException if the maximum weight is not positive
+     */
+    public PriceGroupCache(PriceGroupLoader loader, long maxWeight, ToIntFunction<List<Price>> weigher) {
+        if (maxWeight < 1)
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+        this.loader = loader;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the prices of the group, loading them if the group is not cached.
+     *
+     * @param key the price group key
+     * @return an unmodifiable list of the prices sorted by the start date
+     * @throws IllegalStateException if the loader fails with a checked exception
+     */
+    public List<Price> get(PriceGroupKey key) {
+        Object load = new Object();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                return entry.prices;
+            }
+            loads.put(key, load);
+        }
+        misses.increment();
+
+        List<Price> prices = null;
+        try {
+            prices = load(key);
+        } finally {
+            synchronized (this) {
+                // the load is cached only if the group was not invalidated, nor loaded again, meanwhile
+                if (loads.remove(key, load) && prices != null && !entries.containsKey(key)) {
+                    Entry entry = new Entry(prices, weigher.applyAsInt(prices));
+                    entries.put(key, entry);
+                    weight += entry.weight;
+                    evict();
+                }
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * Returns the price acting at the moment in time, loading the group if it is not cached.
+     *
+     * @param productCode   the unique product code
+     * @param number        the price number
+     * @param depart        the department number
+     * @param instantMillis the moment in time in milliseconds since the epoch
+     * @return the acting price, or {@code null} if no price acts at that moment
+     * @throws IllegalStateException if the loader fails with a checked exception
+     */
+    public Price activePrice(String productCode, int number, int depart, long instantMillis) {
+        List<Price> prices = get(new PriceGroupKey(productCode, number, depart));
+        int low = 0;
+        int high = prices.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (prices.get(middle).getBeginMillis() <= instantMillis)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return high >= 0 && prices.get(high).getEndMillis() > instantMillis ? prices.get(high) : null;
+    }
+
+    /**
+     * Removes the group from the cache.
+     *
+     * @param key the price group key
+     */
+    public synchronized void invalidate(PriceGroupKey key) {
+        invalidations.increment();
+        loads.remove(key);
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            weight -= entry.weight;
+    }
+
+    /**
+     * Removes the groups of the prices from the cache, e.g. the groups of the incoming prices of a merge.
+     * Every group is invalidated once, however many of its prices there are.
+     *
+     * @param prices the prices
+     */
+    public synchronized void invalidate(Collection<Price> prices) {
+        Set<PriceGroupKey> keys = new HashSet<>();
+        addKeys(keys, prices);
+        keys.forEach(this::invalidate);
+    }
+
+    /**
+     * Removes the groups changed by the changeset from the cache.
+     * Every group is invalidated once, however many of its prices were changed.
+     *
+     * @param changeset the changes made to the price history
+     */
+    public synchronized void invalidate(PriceChangeset changeset) {
+        Set<PriceGroupKey> keys = new HashSet<>();
+        addKeys(keys, changeset.getInserted());
+        addKeys(keys, changeset.getUpdated());
+        addKeys(keys, changeset.getRemoved());
+        keys.forEach(this::invalidate);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        invalidations.increment();
+        loads.clear();
+        entries.clear();
+        weight = 0;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public synchronized int getGroupCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    private List<Price> load(PriceGroupKey key) {
+        List<Price> prices;
+        try {
+            prices = loader.load(key);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load price group " + key, e);
+        }
+        if (prices == null || prices.isEmpty())
+            return Collections.emptyList();
+        List<Price> sortedPrices = new ArrayList<>(prices);
+        sortedPrices.sort(BY_BEGIN);
+        return Collections.unmodifiableList(sortedPrices);
+    }
+
+    private static void addKeys(Set<PriceGroupKey> keys, Collection<Price> prices) {
+        for (Price price : prices)
+            keys.add(PriceGroupKey.of(price));
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry {
+
+        private final List<Price> prices;
+        private final int weight;
+
+        private Entry(List<Price> prices, int weight) {
+            this.prices = prices;
+            this.weight = weight;
+        }
+
+    }
+
+}
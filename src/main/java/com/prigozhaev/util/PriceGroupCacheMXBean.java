@@ -0,0 +1,27 @@
+package com.prigozhaev.util;
+
+/**
+ * The management interface of {@link PriceGroupCache}, exported as a JMX MXBean.
+ */
+
+public interface PriceGroupCacheMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    long getEvictionCount();
+
+    long getInvalidationCount();
+
+    int getGroupCount();
+
+    long getWeight();
+
+    long getMaxWeight();
+
+    void invalidateAll();
+
+}
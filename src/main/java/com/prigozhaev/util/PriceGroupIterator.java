@@ -0,0 +1,89 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The {@code PriceGroupIterator} class reads price groups one by one from prices sorted by the group key.
+ * <p>
+ * Only the current group and the first price of the next group are held in memory.
+ *
+ * @see PriceManager#mergeSorted(Iterator, Iterator, java.util.function.Consumer)
+ */
+
+class PriceGroupIterator implements Iterator<List<Price>> {
+
+    private final Iterator<Price> prices;
+
+    private Price nextPrice;
+    private PriceGroupKey nextKey;
+
+    PriceGroupIterator(Iterator<Price> prices) {
+        this.prices = prices;
+        if (prices.hasNext()) {
+            nextPrice = prices.next();
+            nextKey = PriceGroupKey.of(nextPrice);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextPrice != null;
+    }
+
+    /**
+     * Returns the key of the group that will be returned by {@link #next()}.
+     *
+     * @return the key of the next group
+     * @throws NoSuchElementException if there are no more groups
+     */
+    PriceGroupKey peekKey() {
+        if (nextPrice == null)
+            throw new NoSuchElementException();
+        return nextKey;
+    }
+
+    /**
+     * Returns the prices of the next group.
+     *
+     * @return the prices of the next group in the order they were read
+     * @throws NoSuchElementException   if there are no more groups
+     * @throws IllegalArgumentException if the prices are not sorted by the group key
+     */
+    @Override
+    public List<Price> next() {
+        if (nextPrice == null)
+            throw new NoSuchElementException();
+
+        PriceGroupKey key = nextKey;
+        List<Price> group = new ArrayList<>();
+        group.add(nextPrice);
+        nextPrice = null;
+        nextKey = null;
+
+        while (prices.hasNext()) {
+            Price price = prices.next();
+            PriceGroupKey priceKey = PriceGroupKey.of(price);
+            int order = priceKey.compareTo(key);
+
+            if (order < 0)
+                throw new IllegalArgumentException("Prices are not sorted by group key: " + price);
+
+            if (order > 0) {
+                nextPrice = price;
+                nextKey = priceKey;
+                break;
+            }
+
+            group.add(price);
+        }
+
+        return group;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.List;
+
+/**
+ * The {@code PriceGroupLoader} interface loads the prices of one group on demand,
+ * e.g. from the database or from a price history file.
+ *
+ * @see PriceGroupCache
+ * @see com.prigozhaev.io.PriceHistoryFile#getPrices(PriceGroupKey)
+ * @see com.prigozhaev.persistence.JdbcPriceRepository#findByGroup(PriceGroupKey)
+ */
+
+@FunctionalInterface
+public interface PriceGroupLoader {
+
+    /**
+     * Loads the prices of the group.
+     *
+     * @param key the price group key
+     * @return the prices of the group, empty or {@code null} if the group has no prices
+     * @throws Exception if the prices cannot be loaded
+     */
+    List<Price> load(PriceGroupKey key) throws Exception;
+
+}
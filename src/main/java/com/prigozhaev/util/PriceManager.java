@@ -1,11 +1,27 @@
 package com.prigozhaev.util;
 
+import com.prigozhaev.model.CompactionResult;
 import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceBatch;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Price Manager utility class.
@@ -18,6 +34,11 @@ import java.util.stream.Collectors;
 
 public class PriceManager {
 
+    /**
+     * The default maximum number of price groups merged sequentially by one fork-join task.
+     */
+    public static final int DEFAULT_PARALLELISM_THRESHOLD = 1024;
+
     /**
      * The PriceManager class cannot be instantiated.
      */
@@ -39,12 +60,50 @@ public class PriceManager {
      * <p> • if the price values differ, a new price is added, and the price action period of the old price
      * is reduced according to the period of the new price.</p>
      *
+     * <p>Each group of prices with the same product code, number and department is merged
+     * independently on its own {@link PriceTimeline}; the incoming prices of a group are applied
+     * in the iteration order of the incoming collection.</p>
+     *
+     * <p>Neither the existing nor the incoming price objects are ever modified, so the collections
+     * may hold {@link com.prigozhaev.model.ImmutablePrice}s shared between threads; the prices derived
+     * from immutable prices are immutable as well.</p>
+     *
+     * <p>The result differs from the one of the original merge in two ways. The prices come group by group:
+     * the groups in the order they first appear in the existing and then in the incoming prices, the prices
+     * of a group sorted by the start date, while the original merge moved every group it touched to the end
+     * of the result. And a price cut from an existing price or extended over it keeps the id of the existing
+     * price, while the original merge left such prices without an id, so that
+     * {@link #diff(Collection, Collection)} reports them as updates of the stored prices rather than as
+     * a removal and an insertion.</p>
+     *
+     * <p>Existing prices with an empty price action period, like the zero-length fragments the original
+     * merge left behind where prices with different values met, cover no time: they are dropped from
+     * the groups the incoming prices are merged into. An incoming price with an empty price action period
+     * is rejected.</p>
+     *
      * @param existingPrices the collection of available prices
      * @param incomingPrices the collection of incoming prices
      * @return combined price collection
-     * @throws IllegalArgumentException if the incoming collections are null or empty
+     * @throws IllegalArgumentException if the incoming collections are null or empty,
+     *                                  or the price action period of an incoming price is empty
      */
     public static Collection<Price> merge(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+        return merge(existingPrices, incomingPrices, MergeMetrics.NO_OP);
+    }
+
+    /**
+     * The method merges two price collections like {@link #merge(Collection, Collection)} does,
+     * reporting the group sizes, the applied rules and the time of every phase to the metrics.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @param metrics        the metrics callback
+     * @return combined price collection
+     * @throws IllegalArgumentException if the incoming collections are null or empty
+     * @see MergeStatistics
+     */
+    public static Collection<Price> merge(Collection<Price> existingPrices, Collection<Price> incomingPrices,
+                                          MergeMetrics metrics) {
 
         if ((existingPrices == null || existingPrices.isEmpty()) && (incomingPrices == null || incomingPrices.isEmpty()))
             throw new IllegalArgumentException("Missing valid data for merge");
@@ -55,74 +114,390 @@ public class PriceManager {
         if (incomingPrices == null || incomingPrices.isEmpty())
             return existingPrices;
 
-        List<Price> result = new ArrayList<>(existingPrices);
+        long start = System.nanoTime();
+
+        Map<PriceGroupKey, List<Price>> groups = groupByKey(existingPrices);
+        Map<PriceGroupKey, List<Price>> incomingGroups = groupByKey(incomingPrices);
+
+        long grouped = System.nanoTime();
+        metrics.phaseCompleted(MergePhase.GROUPING, grouped - start);
+
+        PriceTimelineListener listener = metrics == MergeMetrics.NO_OP ? PriceTimelineListener.NO_OP : new PriceTimelineListener() {
+            @Override
+            public void ruleApplied(MergeRule rule) {
+                metrics.ruleApplied(rule);
+            }
+        };
+
+        incomingGroups.forEach((key, incomingPricesGroup) -> {
+            List<Price> existingPricesGroup = groups.getOrDefault(key, Collections.emptyList());
+            metrics.groupMerged(existingPricesGroup.size(), incomingPricesGroup.size());
+            groups.put(key, mergeGroup(existingPricesGroup, incomingPricesGroup, listener));
+        });
+
+        long merged = System.nanoTime();
+        metrics.phaseCompleted(MergePhase.MERGING, merged - grouped);
+
+        List<Price> result = new ArrayList<>(existingPrices.size() + incomingPrices.size());
+        groups.values().forEach(result::addAll);
+
+        long collected = System.nanoTime();
+        metrics.phaseCompleted(MergePhase.COLLECTING, collected - merged);
+        metrics.mergeCompleted(incomingPrices.size(), collected - start);
+
+        return result;
+    }
+
+    /**
+     * The method merges a backlog of imports into the existing prices, giving the same result as
+     * merging the imports one by one with {@link #merge(Collection, Collection)} in the order of the list.
+     * <p>
+     * The prices are grouped once: the incoming prices of every group are concatenated batch by batch
+     * and applied to the timeline of the group in a single pass, so the cost of applying many imports
+     * is close to the cost of applying one import of the same total size.
+     *
+     * @param existingPrices  the collection of available prices
+     * @param incomingBatches the collections of incoming prices, in the order they are applied;
+     *                        null and empty collections are skipped
+     * @return combined price collection
+     * @throws IllegalArgumentException if the existing prices and all incoming collections are null or empty,
+     *                                  or the price action period of an incoming price is empty
+     */
+    public static Collection<Price> mergeAll(Collection<Price> existingPrices, List<? extends Collection<Price>> incomingBatches) {
+        Objects.requireNonNull(incomingBatches);
+
+        int first = 0;
+        if (existingPrices == null || existingPrices.isEmpty()) {
+            while (first < incomingBatches.size() && isEmpty(incomingBatches.get(first)))
+                first++;
+            if (first == incomingBatches.size())
+                throw new IllegalArgumentException("Missing valid data for merge");
+            existingPrices = incomingBatches.get(first++);
+        }
 
-        for (Price incomingPrice : incomingPrices) {
-            List<Price> existingPricesGroup = result.stream()
-                    .filter(existingPrice -> isContain(existingPrice, incomingPrice))
-                    .collect(Collectors.toList());
-            result.removeAll(existingPricesGroup);
-            result.addAll(getPriceListForGroup(existingPricesGroup, incomingPrice));
+        Map<PriceGroupKey, List<Price>> incomingGroups = new LinkedHashMap<>();
+        int incomingSize = 0;
+        for (int i = first; i < incomingBatches.size(); i++) {
+            Collection<Price> incomingPrices = incomingBatches.get(i);
+            if (isEmpty(incomingPrices))
+                continue;
+            for (Price price : incomingPrices)
+                incomingGroups.computeIfAbsent(PriceGroupKey.of(price), key -> new ArrayList<>()).add(price);
+            incomingSize += incomingPrices.size();
         }
 
+        if (incomingGroups.isEmpty())
+            return existingPrices;
+
+        Map<PriceGroupKey, List<Price>> groups = groupByKey(existingPrices);
+        incomingGroups.forEach((key, incomingPricesGroup) ->
+                groups.put(key, mergeGroup(groups.getOrDefault(key, Collections.emptyList()), incomingPricesGroup)));
+
+        List<Price> result = new ArrayList<>(existingPrices.size() + incomingSize);
+        groups.values().forEach(result::addAll);
         return result;
     }
 
-    private static Collection<Price> getPriceListForGroup(List<Price> existingPricesGroup, Price incomingPrice) {
+    /**
+     * The method merges two price collections like {@link #merge(Collection, Collection)} does,
+     * merging independent price groups in parallel on the common fork-join pool.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @return combined price collection
+     * @throws IllegalArgumentException if the incoming collections are null or empty
+     * @see #parallelMerge(Collection, Collection, ForkJoinPool, int)
+     */
+    public static Collection<Price> parallelMerge(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+        return parallelMerge(existingPrices, incomingPrices, ForkJoinPool.commonPool(), DEFAULT_PARALLELISM_THRESHOLD);
+    }
+
+    /**
+     * The method merges two price collections like {@link #merge(Collection, Collection)} does,
+     * merging independent price groups in parallel on the given fork-join pool.
+     * <p>
+     * Both collections are partitioned by product code, number and department, and the partitions
+     * are split between fork-join tasks until a task holds no more groups than the threshold.
+     * The result contains the same prices in the same order as the sequential merge.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @param pool           the fork-join pool to merge the groups on
+     * @param threshold      the maximum number of price groups merged sequentially by one task
+     * @return combined price collection
+     * @throws IllegalArgumentException if the incoming collections are null or empty,
+     *                                  or if the threshold is not positive
+     */
+    public static Collection<Price> parallelMerge(Collection<Price> existingPrices, Collection<Price> incomingPrices,
+                                                  ForkJoinPool pool, int threshold) {
+
+        if (threshold < 1)
+            throw new IllegalArgumentException("Parallelism threshold must be positive: " + threshold);
+
+        if ((existingPrices == null || existingPrices.isEmpty()) && (incomingPrices == null || incomingPrices.isEmpty()))
+            throw new IllegalArgumentException("Missing valid data for merge");
 
-        List<Price> groupOfPricesList = new ArrayList<>();
+        if (existingPrices == null || existingPrices.isEmpty())
+            return incomingPrices;
+
+        if (incomingPrices == null || incomingPrices.isEmpty())
+            return existingPrices;
+
+        Map<PriceGroupKey, List<Price>> existingGroups = groupByKey(existingPrices);
+        Map<PriceGroupKey, List<Price>> incomingGroups = groupByKey(incomingPrices);
+
+        Set<PriceGroupKey> keySet = new LinkedHashSet<>(existingGroups.keySet());
+        keySet.addAll(incomingGroups.keySet());
+        PriceGroupKey[] keys = keySet.toArray(new PriceGroupKey[0]);
+
+        List<List<Price>> mergedGroups = new ArrayList<>(Collections.nCopies(keys.length, null));
+        pool.invoke(new PriceMergeTask(keys, existingGroups, incomingGroups, mergedGroups, 0, keys.length, threshold));
+
+        List<Price> result = new ArrayList<>(existingPrices.size() + incomingPrices.size());
+        for (List<Price> mergedGroup : mergedGroups)
+            result.addAll(mergedGroup);
+
+        return result;
+    }
 
-        if (existingPricesGroup.isEmpty()) {
-            groupOfPricesList.add(incomingPrice);
-            return groupOfPricesList;
+    /**
+     * The method merges two price streams sorted by product code, number, department and start date,
+     * emitting the merged prices to the sink group by group.
+     *
+     * @param existingPrices the stream of available prices
+     * @param incomingPrices the stream of incoming prices
+     * @param sink           the consumer of the merged prices
+     * @throws IllegalArgumentException if the prices are not sorted by the group key
+     * @see #mergeSorted(Iterator, Iterator, Consumer)
+     */
+    public static void mergeSorted(Stream<Price> existingPrices, Stream<Price> incomingPrices, Consumer<? super Price> sink) {
+        mergeSorted(existingPrices.iterator(), incomingPrices.iterator(), sink);
+    }
+
+    /**
+     * The method merges two price sequences sorted by product code, number, department and start date,
+     * emitting the merged prices to the sink group by group.
+     * <p>
+     * The sequences are read in step, one price group at a time, so the memory used is proportional
+     * to the largest price group rather than to the whole sequences. The merge rules are the same as
+     * in {@link #merge(Collection, Collection)}. The merged prices are emitted in the same order,
+     * so the output can be fed into another sorted merge.
+     *
+     * @param existingPrices the iterator over available prices
+     * @param incomingPrices the iterator over incoming prices
+     * @param sink           the consumer of the merged prices
+     * @throws IllegalArgumentException if the prices are not sorted by the group key
+     */
+    public static void mergeSorted(Iterator<Price> existingPrices, Iterator<Price> incomingPrices, Consumer<? super Price> sink) {
+
+        PriceGroupIterator existingGroups = new PriceGroupIterator(Objects.requireNonNull(existingPrices));
+        PriceGroupIterator incomingGroups = new PriceGroupIterator(Objects.requireNonNull(incomingPrices));
+
+        while (existingGroups.hasNext() || incomingGroups.hasNext()) {
+            int order;
+            if (!incomingGroups.hasNext())
+                order = -1;
+            else if (!existingGroups.hasNext())
+                order = 1;
+            else
+                order = existingGroups.peekKey().compareTo(incomingGroups.peekKey());
+
+            if (order < 0)
+                existingGroups.next().forEach(sink);
+            else if (order > 0)
+                mergeGroup(Collections.emptyList(), incomingGroups.next()).forEach(sink);
+            else
+                mergeGroup(existingGroups.next(), incomingGroups.next()).forEach(sink);
         }
+    }
+
+    /**
+     * The method merges two price batches by the rules of {@link #merge(Collection, Collection)}
+     * without materialising the rows as {@code Price} objects.
+     * <p>
+     * The rows of the result are ordered by the group key, and the prices of each merged group
+     * are sorted by the start date. The ids of the rows are kept like the ids of the prices
+     * by {@link #merge(Collection, Collection)}. The result shares the product code dictionary
+     * of the batches if they share one, and has its own dictionary otherwise.
+     *
+     * @param existingPrices the batch of available prices
+     * @param incomingPrices the batch of incoming prices
+     * @return a new batch of combined prices
+     * @throws IllegalArgumentException if the price action period of a merged price is empty,
+     *                                  or a price number or department does not fit into a packed group key
+     * @see com.prigozhaev.model.ProductCodeDictionary#pack(int, int, int)
+     */
+    public static PriceBatch mergeBatches(PriceBatch existingPrices, PriceBatch incomingPrices) {
+        return PriceBatchMerger.merge(Objects.requireNonNull(existingPrices), Objects.requireNonNull(incomingPrices));
+    }
+
+    /**
+     * The method compacts a price history: the prices of every group are canonicalised into
+     * the minimal set of non-overlapping prices, so that adjacent or overlapping prices with
+     * the same value become one price.
+     * <p>
+     * Each group is sorted by the start date and coalesced in a single sweep. A coalesced price
+     * is a new price that keeps the id of the earliest price it replaces; prices that are not
+     * coalesced with anything are returned as is. The groups keep the order in which they first
+     * appear in the collection, and the prices of each group are sorted by the start date.
+     *
+     * @param prices the collection of prices
+     * @return the compacted prices and the number of removed prices
+     * @throws IllegalArgumentException if the price action period of a price is empty,
+     *                                  or prices of a group with different values intersect
+     */
+    public static CompactionResult compact(Collection<Price> prices) {
+        List<Price> result = new ArrayList<>(prices.size());
+        for (List<Price> group : groupByKey(prices).values())
+            compactGroup(group, result);
+        return new CompactionResult(result, prices.size() - result.size());
+    }
+
+    /**
+     * The method merges two price collections like {@link #merge(Collection, Collection)} does
+     * and compacts the result like {@link #compact(Collection)} does.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @return the compacted combined prices and the number of prices removed by the compaction
+     * @throws IllegalArgumentException if the incoming collections are null or empty,
+     *                                  or the price action period of a price is empty,
+     *                                  or existing prices of a group with different values intersect
+     */
+    public static CompactionResult mergeAndCompact(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+        return compact(merge(existingPrices, incomingPrices));
+    }
+
+    /**
+     * The method computes the changes that turn the existing prices into the merged ones,
+     * so that only the changed rows of a stored price history have to be written.
+     * <p>
+     * A merged price is matched to an existing one by identity or by a non-null id:
+     * a price that is the existing object itself, or an equal copy of it, is unchanged;
+     * a price with the id of an existing price that differs from it is updated;
+     * any other merged price is inserted. Existing prices matched by no merged price are removed.
+     *
+     * @param existingPrices the collection of available prices
+     * @param mergedPrices   the result of merging prices into the available ones
+     * @return the changes made to the available prices
+     * @see #merge(Collection, Collection)
+     */
+    public static PriceChangeset diff(Collection<Price> existingPrices, Collection<Price> mergedPrices) {
+        Objects.requireNonNull(existingPrices);
+        Objects.requireNonNull(mergedPrices);
 
-        existingPricesGroup.stream()
-                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().isInsideIn(existingPrice.getPriceActionPeriod()))
-                .findFirst()
-                .ifPresent(existingPrice -> {
-                    if (incomingPrice.getValue().equals(existingPrice.getValue())) {
-                        incomingPrice.setBegin(existingPrice.getBegin());
-                        incomingPrice.setEnd(existingPrice.getEnd());
-                    } else {
-                        groupOfPricesList.add(new Price(existingPrice, existingPrice.getBegin(), incomingPrice.getBegin()));
-                        groupOfPricesList.add(new Price(existingPrice, incomingPrice.getEnd(), existingPrice.getEnd()));
-                    }
-                });
-
-        existingPricesGroup.stream()
-                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().haveIntersectionOnTheRightWith(existingPrice.getPriceActionPeriod()))
-                .findFirst()
-                .ifPresent(existingPrice -> {
-                    if (incomingPrice.getValue().equals(existingPrice.getValue()))
-                        incomingPrice.setEnd(existingPrice.getEnd());
-                    else
-                        groupOfPricesList.add(new Price(existingPrice, incomingPrice.getEnd(), existingPrice.getEnd()));
-                });
-
-        existingPricesGroup.stream()
-                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().haveIntersectionOnTheLeftWith(existingPrice.getPriceActionPeriod()))
-                .findFirst()
-                .ifPresent(existingPrice -> {
-                    if (incomingPrice.getValue().equals(existingPrice.getValue()))
-                        incomingPrice.setBegin(existingPrice.getBegin());
-                    else
-                        groupOfPricesList.add(new Price(existingPrice, existingPrice.getBegin(), incomingPrice.getBegin()));
-                });
-
-        existingPricesGroup.stream()
-                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().doesNotIntersectionWith(existingPrice.getPriceActionPeriod()))
-                .forEachOrdered(groupOfPricesList::add);
-
-        groupOfPricesList.add(incomingPrice);
-
-        return groupOfPricesList;
-    }
-
-    private static boolean isContain(Price existingPrice, Price incomingPrice) {
-        return existingPrice.getProductCode().equals(incomingPrice.getProductCode()) &&
-                existingPrice.getNumber() == incomingPrice.getNumber() &&
-                existingPrice.getDepart() == incomingPrice.getDepart();
+        Set<Price> unmatched = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Long, Price> existingById = new HashMap<>();
+        for (Price existingPrice : existingPrices) {
+            unmatched.add(existingPrice);
+            if (existingPrice.getId() != null)
+                existingById.put(existingPrice.getId(), existingPrice);
+        }
+
+        List<Price> inserted = new ArrayList<>();
+        List<Price> updated = new ArrayList<>();
+        for (Price mergedPrice : mergedPrices) {
+            if (unmatched.remove(mergedPrice))
+                continue;
+
+            Price existingPrice = mergedPrice.getId() == null ? null : existingById.get(mergedPrice.getId());
+            if (existingPrice == null || !unmatched.remove(existingPrice))
+                inserted.add(mergedPrice);
+            else if (!existingPrice.equals(mergedPrice))
+                updated.add(mergedPrice);
+        }
+
+        List<Price> removed = new ArrayList<>(unmatched.size());
+        for (Price existingPrice : existingPrices)
+            if (unmatched.remove(existingPrice))
+                removed.add(existingPrice);
+
+        return new PriceChangeset(inserted, updated, removed);
+    }
+
+    private static void compactGroup(List<Price> group, List<Price> result) {
+        if (group.size() > 1)
+            group.sort(Comparator.comparingLong(Price::getBeginMillis));
+
+        Price current = null;
+        long currentEnd = 0;
+        boolean coalesced = false;
+
+        for (Price price : group) {
+            if (price.getEndMillis() <= price.getBeginMillis())
+                throw new IllegalArgumentException("Price action period is empty: " + price);
+
+            if (current != null && price.getBeginMillis() <= currentEnd) {
+                if (!Objects.equals(current.getValue(), price.getValue()) && price.getBeginMillis() < currentEnd)
+                    throw new IllegalArgumentException("Prices with different values intersect: " + current + ", " + price);
+                if (Objects.equals(current.getValue(), price.getValue())) {
+                    currentEnd = Math.max(currentEnd, price.getEndMillis());
+                    coalesced = true;
+                    continue;
+                }
+            }
+
+            if (current != null)
+                result.add(coalesced(current, currentEnd, coalesced));
+            current = price;
+            currentEnd = price.getEndMillis();
+            coalesced = false;
+        }
+
+        if (current != null)
+            result.add(coalesced(current, currentEnd, coalesced));
+    }
+
+    private static Price coalesced(Price price, long end, boolean coalesced) {
+        if (!coalesced || end == price.getEndMillis())
+            return price;
+        return price.withPeriod(price.getBeginMillis(), end, price.getId());
+    }
+
+    private static boolean isEmpty(Collection<Price> prices) {
+        return prices == null || prices.isEmpty();
+    }
+
+    /**
+     * Splits prices into groups by product code, number and department.
+     * The groups keep the order in which they first appear in the collection.
+     *
+     * @param prices the collection of prices
+     * @return the prices grouped by the group key
+     */
+    static Map<PriceGroupKey, List<Price>> groupByKey(Collection<Price> prices) {
+        Map<PriceGroupKey, List<Price>> groups = new LinkedHashMap<>();
+        for (Price price : prices)
+            groups.computeIfAbsent(PriceGroupKey.of(price), key -> new ArrayList<>()).add(price);
+        return groups;
+    }
+
+    /**
+     * Merges the incoming prices of one group into the existing prices of the same group.
+     *
+     * @param existingPricesGroup the existing prices of the group
+     * @param incomingPricesGroup the incoming prices of the group, in the order they are applied
+     * @return the merged prices of the group sorted by the start date
+     */
+    static List<Price> mergeGroup(List<Price> existingPricesGroup, List<Price> incomingPricesGroup) {
+        return mergeGroup(existingPricesGroup, incomingPricesGroup, PriceTimelineListener.NO_OP);
+    }
+
+    /**
+     * Merges the incoming prices of one group into the existing prices of the same group,
+     * reporting the changes made by the incoming prices to the listener.
+     *
+     * @param existingPricesGroup the existing prices of the group
+     * @param incomingPricesGroup the incoming prices of the group, in the order they are applied
+     * @param listener            the listener of the changes
+     * @return the merged prices of the group sorted by the start date
+     */
+    static List<Price> mergeGroup(List<Price> existingPricesGroup, List<Price> incomingPricesGroup,
+                                  PriceTimelineListener listener) {
+        PriceTimeline timeline = new PriceTimeline(existingPricesGroup);
+        for (Price incomingPrice : incomingPricesGroup)
+            timeline.apply(incomingPrice, listener);
+        return new ArrayList<>(timeline.getPrices());
     }
 
 }
\ No newline at end of file
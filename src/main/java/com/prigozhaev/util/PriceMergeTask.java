@@ -0,0 +1,68 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The {@code PriceMergeTask} class merges a range of price groups on a fork-join pool.
+ * <p>
+ * The range is split in halves until it contains no more groups than the threshold,
+ * then the groups of the range are merged sequentially. Each group is written to its own
+ * slot of the result list, so the tasks never share mutable state.
+ *
+ * @see PriceManager#parallelMerge(java.util.Collection, java.util.Collection, java.util.concurrent.ForkJoinPool, int)
+ */
+
+class PriceMergeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PriceGroupKey[] keys;
+    private final Map<PriceGroupKey, List<Price>> existingGroups;
+    private final Map<PriceGroupKey, List<Price>> incomingGroups;
+    private final List<List<Price>> mergedGroups;
+    private final int from;
+    private final int to;
+    private final int threshold;
+
+    PriceMergeTask(PriceGroupKey[] keys,
+                   Map<PriceGroupKey, List<Price>> existingGroups,
+                   Map<PriceGroupKey, List<Price>> incomingGroups,
+                   List<List<Price>> mergedGroups,
+                   int from, int to, int threshold) {
+        this.keys = keys;
+        this.existingGroups = existingGroups;
+        this.incomingGroups = incomingGroups;
+        this.mergedGroups = mergedGroups;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= threshold) {
+            for (int i = from; i < to; i++)
+                mergedGroups.set(i, mergeGroup(keys[i]));
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        invokeAll(new PriceMergeTask(keys, existingGroups, incomingGroups, mergedGroups, from, middle, threshold),
+                new PriceMergeTask(keys, existingGroups, incomingGroups, mergedGroups, middle, to, threshold));
+    }
+
+    private List<Price> mergeGroup(PriceGroupKey key) {
+        List<Price> existingPricesGroup = existingGroups.getOrDefault(key, Collections.emptyList());
+        List<Price> incomingPricesGroup = incomingGroups.get(key);
+        if (incomingPricesGroup == null)
+            return existingPricesGroup;
+        return PriceManager.mergeGroup(existingPricesGroup, incomingPricesGroup);
+    }
+
+}
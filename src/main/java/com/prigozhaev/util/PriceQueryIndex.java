@@ -0,0 +1,369 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@code PriceQueryIndex} class answers range queries over merged prices:
+ * all prices of a department, or of a set of products, acting anywhere in a period.
+ * <p>
+ * The index is built once and keeps two secondary indexes:
+ * <p> • by product code: the prices of every product in an interval array,
+ * so a product is found by a hash lookup and its prices acting in the period by a tree search;</p>
+ * <p> • by department: the prices of every department split into fixed-width time buckets.
+ * A price is put into every bucket its action period covers, and a price covering more than
+ * the maximum number of buckets goes to an overflow interval array instead,
+ * so long-lasting prices do not bloat the buckets.</p>
+ * <p>
+ * An interval array keeps the prices sorted by the start time together with an implicit tree
+ * of the maximum end times, so the prices acting in a period are found in
+ * {@code O((k + 1) log n)} for {@code k} found prices, however long the history is.
+ * <p>
+ * The queries return lazy streams that visit only the buckets and the products of the query,
+ * so their cost grows with the size of the result rather than the size of the index.
+ * The results are not sorted. The index is immutable, so any number of threads can query it
+ * without locking.
+ *
+ * @see ActivePriceIndex
+ */
+
+public final class PriceQueryIndex {
+
+    /**
+     * The default width of a time bucket.
+     */
+    public static final long DEFAULT_BUCKET_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The default maximum number of time buckets a price is put into.
+     */
+    public static final int DEFAULT_MAX_BUCKETS_PER_PRICE = 32;
+
+    private static final Comparator<Price> BY_BEGIN = Comparator.comparingLong(Price::getBeginMillis);
+
+    private final long bucketMillis;
+    private final Map<String, IntervalArray> pricesByProduct;
+    private final Map<Integer, DepartIndex> pricesByDepart;
+    private final int size;
+
+    private PriceQueryIndex(long bucketMillis, Map<String, IntervalArray> pricesByProduct,
+                            Map<Integer, DepartIndex> pricesByDepart, int size) {
+        this.bucketMillis = bucketMillis;
+        this.pricesByProduct = pricesByProduct;
+        this.pricesByDepart = pricesByDepart;
+        this.size = size;
+    }
+
+    /**
+     * Builds the index from merged prices with the default bucket width.
+     *
+     * @param prices the merged prices
+     * @return a new index
+     */
+    public static PriceQueryIndex build(Collection<Price> prices) {
+        return build(prices, DEFAULT_BUCKET_MILLIS, DEFAULT_MAX_BUCKETS_PER_PRICE);
+    }
+
+    /**
+     * Builds the index from merged prices.
+     *
+     * @param prices             the merged prices
+     * @param bucketMillis       the width of a time bucket in milliseconds
+     * @param maxBucketsPerPrice the maximum number of time buckets a price is put into
+     * @return a new index
+     * @throws IllegalArgumentException if the bucket width or the maximum number of buckets is not positive
+     */
+    public static PriceQueryIndex build(Collection<Price> prices, long bucketMillis, int maxBucketsPerPrice) {
+        if (bucketMillis < 1)
+            throw new IllegalArgumentException("Bucket width must be positive: " + bucketMillis);
+        if (maxBucketsPerPrice < 1)
+            throw new IllegalArgumentException("Maximum number of buckets must be positive: " + maxBucketsPerPrice);
+
+        Map<String, List<Price>> productLists = new HashMap<>();
+        Map<Integer, NavigableMap<Long, List<Price>>> bucketLists = new HashMap<>();
+        Map<Integer, List<Price>> overflowLists = new HashMap<>();
+
+        for (Price price : prices) {
+            productLists.computeIfAbsent(price.getProductCode(), code -> new ArrayList<>()).add(price);
+
+            long firstBucket = Math.floorDiv(price.getBeginMillis(), bucketMillis);
+            long lastBucket = Math.floorDiv(price.getEndMillis() - 1, bucketMillis);
+            if (lastBucket < firstBucket || lastBucket - firstBucket >= maxBucketsPerPrice) {
+                overflowLists.computeIfAbsent(price.getDepart(), depart -> new ArrayList<>()).add(price);
+            } else {
+                NavigableMap<Long, List<Price>> buckets = bucketLists.computeIfAbsent(price.getDepart(), depart -> new TreeMap<>());
+                for (long bucket = firstBucket; bucket <= lastBucket; bucket++)
+                    buckets.computeIfAbsent(bucket, key -> new ArrayList<>()).add(price);
+            }
+        }
+
+        Map<String, IntervalArray> pricesByProduct = new HashMap<>(productLists.size() * 4 / 3 + 1);
+        productLists.forEach((code, list) -> pricesByProduct.put(code, new IntervalArray(sorted(list))));
+
+        Map<Integer, DepartIndex> pricesByDepart = new HashMap<>();
+        bucketLists.forEach((depart, buckets) -> {
+            NavigableMap<Long, Price[]> sortedBuckets = new TreeMap<>();
+            buckets.forEach((bucket, list) -> sortedBuckets.put(bucket, sorted(list)));
+            pricesByDepart.put(depart, new DepartIndex(sortedBuckets, IntervalArray.EMPTY));
+        });
+        overflowLists.forEach((depart, list) -> pricesByDepart.merge(depart,
+                new DepartIndex(new TreeMap<>(), new IntervalArray(sorted(list))),
+                (index, overflow) -> new DepartIndex(index.buckets, overflow.overflow)));
+
+        return new PriceQueryIndex(bucketMillis, pricesByProduct, pricesByDepart, prices.size());
+    }
+
+    /**
+     * Returns the prices of the department acting anywhere in the period.
+     *
+     * @param depart the department number
+     * @param from   the start of the period, inclusive
+     * @param to     the end of the period, exclusive
+     * @return a lazy stream of the prices
+     * @throws IllegalArgumentException if the period ends before it starts
+     */
+    public Stream<Price> findByDepart(int depart, Date from, Date to) {
+        return findByDepart(depart, from.getTime(), to.getTime());
+    }
+
+    /**
+     * Returns the prices of the department acting anywhere in the period.
+     *
+     * @param depart     the department number
+     * @param fromMillis the start of the period in milliseconds since the epoch, inclusive
+     * @param toMillis   the end of the period in milliseconds since the epoch, exclusive
+     * @return a lazy stream of the prices
+     * @throws IllegalArgumentException if the period ends before it starts
+     */
+    public Stream<Price> findByDepart(int depart, long fromMillis, long toMillis) {
+        checkPeriod(fromMillis, toMillis);
+        DepartIndex index = pricesByDepart.get(depart);
+        if (index == null || fromMillis == toMillis)
+            return Stream.empty();
+
+        long fromBucket = Math.floorDiv(fromMillis, bucketMillis);
+        long toBucket = Math.floorDiv(toMillis - 1, bucketMillis);
+
+        // a price covering several buckets of the period is reported by the first of them only
+        Stream<Price> bucketed = index.buckets.subMap(fromBucket, true, toBucket, true).entrySet().stream()
+                .flatMap(bucket -> Arrays.stream(bucket.getValue())
+                        .filter(price -> Math.max(Math.floorDiv(price.getBeginMillis(), bucketMillis), fromBucket) == bucket.getKey()
+                                && intersects(price, fromMillis, toMillis)));
+
+        return Stream.concat(bucketed, index.overflow.find(fromMillis, toMillis));
+    }
+
+    /**
+     * Returns the prices of the products acting anywhere in the period.
+     *
+     * @param productCodes the product codes
+     * @param from         the start of the period, inclusive
+     * @param to           the end of the period, exclusive
+     * @return a lazy stream of the prices
+     * @throws IllegalArgumentException if the period ends before it starts
+     */
+    public Stream<Price> findByProducts(Collection<String> productCodes, Date from, Date to) {
+        return findByProducts(productCodes, from.getTime(), to.getTime());
+    }
+
+    /**
+     * Returns the prices of the products acting anywhere in the period.
+     *
+     * @param productCodes the product codes
+     * @param fromMillis   the start of the period in milliseconds since the epoch, inclusive
+     * @param toMillis     the end of the period in milliseconds since the epoch, exclusive
+     * @return a lazy stream of the prices
+     * @throws IllegalArgumentException if the period ends before it starts
+     */
+    public Stream<Price> findByProducts(Collection<String> productCodes, long fromMillis, long toMillis) {
+        checkPeriod(fromMillis, toMillis);
+        return productCodes.stream()
+                .map(pricesByProduct::get)
+                .filter(Objects::nonNull)
+                .flatMap(prices -> prices.find(fromMillis, toMillis));
+    }
+
+    /**
+     * Returns the number of prices in the index.
+     *
+     * @return the number of prices
+     */
+    public int size() {
+        return size;
+    }
+
+    private static boolean intersects(Price price, long fromMillis, long toMillis) {
+        return !Price.PriceActionPeriod.doesNotIntersectionWith(price.getBeginMillis(), price.getEndMillis(), fromMillis, toMillis);
+    }
+
+    private static void checkPeriod(long fromMillis, long toMillis) {
+        if (toMillis < fromMillis)
+            throw new IllegalArgumentException("Period ends before it starts: [" + fromMillis + ", " + toMillis + ")");
+    }
+
+    /**
+     * Returns the number of prices sorted by the start time that start before the moment.
+     */
+    private static int startingBefore(Price[] prices, long millis) {
+        int low = 0;
+        int high = prices.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (prices[middle].getBeginMillis() < millis)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static Price[] sorted(List<Price> prices) {
+        Price[] array = prices.toArray(new Price[0]);
+        Arrays.sort(array, BY_BEGIN);
+        return array;
+    }
+
+    /**
+     * The prices of one department split into time buckets.
+     */
+    private static final class DepartIndex {
+
+        private final NavigableMap<Long, Price[]> buckets;
+        private final IntervalArray overflow;
+
+        private DepartIndex(NavigableMap<Long, Price[]> buckets, IntervalArray overflow) {
+            this.buckets = buckets;
+            this.overflow = overflow;
+        }
+
+    }
+
+    /**
+     * Prices sorted by the start time with an implicit binary tree over them:
+     * a node keeps the maximum end time of its leaves, so a search skips every subtree
+     * whose prices all end before the period, and every subtree starting after it.
+     */
+    private static final class IntervalArray {
+
+        private static final IntervalArray EMPTY = new IntervalArray(new Price[0]);
+
+        private final Price[] prices;
+        private final long[] maxEnds;
+        private final int leaves;
+        private final int height;
+
+        private IntervalArray(Price[] prices) {
+            this.prices = prices;
+            int leaves = 1;
+            int height = 1;
+            while (leaves < prices.length) {
+                leaves <<= 1;
+                height++;
+            }
+            this.leaves = leaves;
+            this.height = height;
+            this.maxEnds = new long[leaves * 2];
+            Arrays.fill(maxEnds, Long.MIN_VALUE);
+            for (int i = 0; i < prices.length; i++)
+                maxEnds[leaves + i] = prices[i].getEndMillis();
+            for (int node = leaves - 1; node > 0; node--)
+                maxEnds[node] = Math.max(maxEnds[node * 2], maxEnds[node * 2 + 1]);
+        }
+
+        /**
+         * Returns the prices acting anywhere in the period, in the order of the start time.
+         */
+        private Stream<Price> find(long fromMillis, long toMillis) {
+            if (prices.length == 0)
+                return Stream.empty();
+            Iterator<Price> iterator = new Search(fromMillis, startingBefore(prices, toMillis));
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /**
+         * A depth-first search over the tree with an explicit stack of nodes and their ranges.
+         */
+        private final class Search implements Iterator<Price> {
+
+            private final long fromMillis;
+            private final int limit;
+            private final int[] nodes = new int[height + 1];
+            private final int[] lows = new int[height + 1];
+            private final int[] highs = new int[height + 1];
+            private int top;
+            private Price next;
+
+            private Search(long fromMillis, int limit) {
+                this.fromMillis = fromMillis;
+                this.limit = limit;
+                push(1, 0, leaves);
+                advance();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Price next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Price result = next;
+                advance();
+                return result;
+            }
+
+            private void advance() {
+                next = null;
+                while (top > 0) {
+                    top--;
+                    int node = nodes[top];
+                    int low = lows[top];
+                    int high = highs[top];
+                    if (low >= limit || maxEnds[node] <= fromMillis)
+                        continue;
+                    if (high - low == 1) {
+                        Price price = prices[low];
+                        if (price.getEndMillis() > fromMillis) {
+                            next = price;
+                            return;
+                        }
+                        continue;
+                    }
+                    int middle = (low + high) >>> 1;
+                    push(node * 2 + 1, middle, high);
+                    push(node * 2, low, middle);
+                }
+            }
+
+            private void push(int node, int low, int high) {
+                nodes[top] = node;
+                lows[top] = low;
+                highs[top] = high;
+                top++;
+            }
+
+        }
+
+    }
+
+}
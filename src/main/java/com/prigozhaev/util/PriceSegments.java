@@ -0,0 +1,207 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+import java.util.Arrays;
+
+/**
+ * The {@code PriceSegments} class is a primitive timeline of one price group.
+ * <p>
+ * It applies the same rules as {@link PriceTimeline}, but keeps the price action periods
+ * and values in reusable arrays sorted by the start time, so merging a group allocates
+ * nothing once the arrays have grown to the size of the largest group.
+ * <p>
+ * A segment can optionally carry the price it was cut from and the id it inherits by the rules
+ * of {@link PriceTimeline}, so that the merged group can be turned back into {@code Price} objects.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @see PriceTimeline#apply(com.prigozhaev.model.Price)
+ */
+
+final class PriceSegments {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+    private long[] begins = new long[DEFAULT_CAPACITY];
+    private long[] ends = new long[DEFAULT_CAPACITY];
+    private long[] values = new long[DEFAULT_CAPACITY];
+    private boolean[] hasValues = new boolean[DEFAULT_CAPACITY];
+    private Long[] ids = new Long[DEFAULT_CAPACITY];
+    private Price[] sources = new Price[DEFAULT_CAPACITY];
+
+    /**
+     * Removes all segments, keeping the arrays for the next group.
+     */
+    void clear() {
+        Arrays.fill(ids, 0, size, null);
+        Arrays.fill(sources, 0, size, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long begin(int index) {
+        return begins[index];
+    }
+
+    long end(int index) {
+        return ends[index];
+    }
+
+    long value(int index) {
+        return values[index];
+    }
+
+    boolean hasValue(int index) {
+        return hasValues[index];
+    }
+
+    Long id(int index) {
+        return ids[index];
+    }
+
+    Price source(int index) {
+        return sources[index];
+    }
+
+    /**
+     * Applies the incoming price to the segments like {@link #apply(long, long, long, boolean, Long, Price)}
+     * does, without an id and a source price.
+     */
+    void apply(long begin, long end, long value, boolean hasValue) {
+        apply(begin, end, value, hasValue, null, null);
+    }
+
+    /**
+     * Applies the incoming price to the segments in a single pass
+     * over the segments it intersects with.
+     *
+     * @param begin    the start time of the incoming price
+     * @param end      the end time of the incoming price
+     * @param value    the currency value of the incoming price
+     * @param hasValue {@code false} if the incoming price has no currency value
+     * @param id       the id of the incoming price, may be {@code null}
+     * @param source   the incoming price, may be {@code null}
+     * @throws IllegalArgumentException if the price action period is empty
+     */
+    void apply(long begin, long end, long value, boolean hasValue, Long id, Price source) {
+
+        if (end <= begin)
+            throw new IllegalArgumentException("Price action period is empty: [" + begin + ", " + end + ")");
+
+        int first = firstEndingAfter(begin);
+        int last = first;
+        while (last < size && begins[last] < end)
+            last++;
+
+        long mergedBegin = begin;
+        long mergedEnd = end;
+        Long mergedId = id;
+        boolean extended = false;
+        boolean head = false;
+        boolean tail = false;
+        long headBegin = 0;
+        long headValue = 0;
+        boolean headHasValue = false;
+        Long headId = null;
+        Price headSource = null;
+        long tailEnd = 0;
+        long tailValue = 0;
+        boolean tailHasValue = false;
+        Long tailId = null;
+        Price tailSource = null;
+
+        for (int i = first; i < last; i++) {
+            if (hasValues[i] == hasValue && (!hasValue || values[i] == value)) {
+                mergedBegin = Math.min(mergedBegin, begins[i]);
+                mergedEnd = Math.max(mergedEnd, ends[i]);
+                if (!extended) {
+                    extended = true;
+                    mergedId = ids[i];
+                }
+            } else {
+                if (begins[i] < begin) {
+                    head = true;
+                    headBegin = begins[i];
+                    headValue = values[i];
+                    headHasValue = hasValues[i];
+                    headId = ids[i];
+                    headSource = sources[i];
+                }
+                if (ends[i] > end) {
+                    tail = true;
+                    tailEnd = ends[i];
+                    tailValue = values[i];
+                    tailHasValue = hasValues[i];
+                    tailId = begins[i] < begin ? null : ids[i];
+                    tailSource = sources[i];
+                }
+            }
+        }
+
+        int inserted = 1 + (head ? 1 : 0) + (tail ? 1 : 0);
+        int newSize = size - (last - first) + inserted;
+        if (newSize > begins.length)
+            grow(newSize);
+
+        int moved = size - last;
+        if (moved > 0) {
+            System.arraycopy(begins, last, begins, first + inserted, moved);
+            System.arraycopy(ends, last, ends, first + inserted, moved);
+            System.arraycopy(values, last, values, first + inserted, moved);
+            System.arraycopy(hasValues, last, hasValues, first + inserted, moved);
+            System.arraycopy(ids, last, ids, first + inserted, moved);
+            System.arraycopy(sources, last, sources, first + inserted, moved);
+        }
+        if (newSize < size) {
+            Arrays.fill(ids, newSize, size, null);
+            Arrays.fill(sources, newSize, size, null);
+        }
+
+        int index = first;
+        if (head)
+            set(index++, headBegin, begin, headValue, headHasValue, headId, headSource);
+        set(index++, mergedBegin, mergedEnd, value, hasValue, mergedId, source);
+        if (tail)
+            set(index, end, tailEnd, tailValue, tailHasValue, tailId, tailSource);
+
+        size = newSize;
+    }
+
+    private int firstEndingAfter(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] > time)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+
+    private void set(int index, long begin, long end, long value, boolean hasValue, Long id, Price source) {
+        begins[index] = begin;
+        ends[index] = end;
+        values[index] = value;
+        hasValues[index] = hasValue;
+        ids[index] = id;
+        sources[index] = source;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, begins.length << 1);
+        begins = Arrays.copyOf(begins, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        values = Arrays.copyOf(values, capacity);
+        hasValues = Arrays.copyOf(hasValues, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        sources = Arrays.copyOf(sources, capacity);
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code PriceSnapshot} class represents an immutable state of the merged price history.
+ * <p>
+ * Merging an import into a snapshot builds a new snapshot beside it: the groups touched by
+ * the import are merged into new lists, the lists of all other groups are shared between
+ * the snapshots. The old snapshot stays valid and unchanged for its readers.
+ * <p>
+ * The groups are spread over a fixed number of shards by the hash of the group key, and every
+ * shard is a copy-on-write map: a merge copies only the shards it touches and shares the others,
+ * so a small import into a large history copies a small part of the group directory.
+ * <p>
+ * The prices put into a snapshot must not be modified afterwards.
+ *
+ * @see PriceSnapshotPublisher
+ */
+
+public final class PriceSnapshot {
+
+    private static final int SHARDS = 256;
+
+    private static final PriceSnapshot EMPTY = new PriceSnapshot(emptyShards(), 0, 0, 0);
+
+    private final Map<PriceGroupKey, List<Price>>[] shards;
+    private final int groupCount;
+    private final int size;
+    private final long version;
+
+    private volatile ActivePriceIndex activePriceIndex;
+
+    private PriceSnapshot(Map<PriceGroupKey, List<Price>>[] shards, int groupCount, int size, long version) {
+        this.shards = shards;
+        this.groupCount = groupCount;
+        this.size = size;
+        this.version = version;
+    }
+
+    /**
+     * Returns the snapshot without prices.
+     *
+     * @return the empty snapshot
+     */
+    public static PriceSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a snapshot of the price history.
+     *
+     * @param prices the collection of available prices
+     * @return a new snapshot
+     */
+    public static PriceSnapshot of(Collection<Price> prices) {
+        Map<PriceGroupKey, List<Price>> groups = PriceManager.groupByKey(prices);
+        Map<PriceGroupKey, List<Price>>[] shards = newShards();
+        for (int shard = 0; shard < SHARDS; shard++)
+            shards[shard] = new LinkedHashMap<>();
+        groups.forEach((key, group) -> shards[shard(key)].put(key, Collections.unmodifiableList(group)));
+        for (int shard = 0; shard < SHARDS; shard++)
+            shards[shard] = Collections.unmodifiableMap(shards[shard]);
+        return new PriceSnapshot(shards, groups.size(), prices.size(), 0);
+    }
+
+    /**
+     * The method merges the incoming prices into a new snapshot by the rules of
+     * {@link PriceManager#merge(Collection, Collection)}. This snapshot is not changed.
+     *
+     * @param incomingPrices the collection of incoming prices
+     * @return a new snapshot, sharing the untouched price groups with this one
+     * @throws IllegalArgumentException if the price action period of an incoming price is empty
+     */
+    public PriceSnapshot merge(Collection<Price> incomingPrices) {
+        Map<PriceGroupKey, List<Price>>[] mergedShards = shards.clone();
+        boolean[] copied = new boolean[SHARDS];
+        int mergedGroupCount = groupCount;
+        int mergedSize = size;
+
+        for (Map.Entry<PriceGroupKey, List<Price>> incomingGroup : PriceManager.groupByKey(incomingPrices).entrySet()) {
+            int shard = shard(incomingGroup.getKey());
+            if (!copied[shard]) {
+                mergedShards[shard] = new LinkedHashMap<>(shards[shard]);
+                copied[shard] = true;
+            }
+            List<Price> existingPricesGroup = shards[shard].getOrDefault(incomingGroup.getKey(), Collections.emptyList());
+            List<Price> mergedGroup = PriceManager.mergeGroup(existingPricesGroup, incomingGroup.getValue());
+            if (mergedShards[shard].put(incomingGroup.getKey(), Collections.unmodifiableList(mergedGroup)) == null)
+                mergedGroupCount++;
+            mergedSize += mergedGroup.size() - existingPricesGroup.size();
+        }
+
+        for (int shard = 0; shard < SHARDS; shard++)
+            if (copied[shard])
+                mergedShards[shard] = Collections.unmodifiableMap(mergedShards[shard]);
+        return new PriceSnapshot(mergedShards, mergedGroupCount, mergedSize, version + 1);
+    }
+
+    /**
+     * Returns the prices of the group sorted by the start date.
+     *
+     * @param key the price group key
+     * @return an unmodifiable list of the prices, empty if the snapshot has no such group
+     */
+    public List<Price> getPrices(PriceGroupKey key) {
+        return shards[shard(key)].getOrDefault(key, Collections.emptyList());
+    }
+
+    /**
+     * Returns all prices of the snapshot, group by group. The groups follow in the order of their
+     * shards, and the prices of each group are sorted by the start date.
+     *
+     * @return a new list of the prices
+     */
+    public List<Price> getPrices() {
+        List<Price> prices = new ArrayList<>(size);
+        for (Map<PriceGroupKey, List<Price>> shard : shards)
+            shard.values().forEach(prices::addAll);
+        return prices;
+    }
+
+    /**
+     * Returns the active price index of the snapshot, building it on the first call.
+     *
+     * @return the active price index
+     */
+    public ActivePriceIndex getActivePriceIndex() {
+        ActivePriceIndex index = activePriceIndex;
+        if (index == null) {
+            index = ActivePriceIndex.build(getPrices());
+            activePriceIndex = index;
+        }
+        return index;
+    }
+
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of merges the snapshot is built by.
+     *
+     * @return the version of the snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private static int shard(PriceGroupKey key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (SHARDS - 1);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<PriceGroupKey, List<Price>>[] newShards() {
+        return new Map[SHARDS];
+    }
+
+    private static Map<PriceGroupKey, List<Price>>[] emptyShards() {
+        Map<PriceGroupKey, List<Price>>[] shards = newShards();
+        Arrays.fill(shards, Collections.emptyMap());
+        return shards;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The {@code PriceSnapshotPublisher} class publishes merged price snapshots to concurrent readers.
+ * <p>
+ * Readers get the current {@link PriceSnapshot} with a single volatile read and never block.
+ * An import is merged into a new snapshot beside the current one, which is then swapped
+ * atomically, so a reader sees either the whole import or none of it.
+ * Imports are serialised among themselves.
+ */
+
+public class PriceSnapshotPublisher {
+
+    private final AtomicReference<PriceSnapshot> current;
+
+    /**
+     * Constructs a publisher of the empty snapshot.
+     */
+    public PriceSnapshotPublisher() {
+        this(PriceSnapshot.empty());
+    }
+
+    /**
+     * Constructs a publisher of the initial snapshot.
+     *
+     * @param snapshot the initial snapshot
+     */
+    public PriceSnapshotPublisher(PriceSnapshot snapshot) {
+        this.current = new AtomicReference<>(snapshot);
+    }
+
+    /**
+     * Returns the current snapshot.
+     *
+     * @return the latest published snapshot
+     */
+    public PriceSnapshot current() {
+        return current.get();
+    }
+
+    /**
+     * The method merges the incoming prices into the current snapshot and publishes the result.
+     *
+     * @param incomingPrices the collection of incoming prices
+     * @return the published snapshot
+     * @throws IllegalArgumentException if the price action period of an incoming price is empty
+     */
+    public synchronized PriceSnapshot publish(Collection<Price> incomingPrices) {
+        PriceSnapshot snapshot = current.get().merge(incomingPrices);
+        current.set(snapshot);
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code PriceStore} class keeps the merged price history in memory between imports.
+ * <p>
+ * Every price group lives on its own {@link PriceTimeline}. Incoming prices are applied
+ * to the timelines of their groups, and only the resulting changes are returned,
+ * so the caller writes just the difference to the database and hands the ids generated
+ * for the new prices back through {@link #assignIds(Collection)}.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @see PriceManager#merge(Collection, Collection)
+ */
+
+public class PriceStore {
+
+    private final Map<PriceGroupKey, PriceTimeline> timelines = new LinkedHashMap<>();
+    private final List<Price> emptyPrices = new ArrayList<>();
+
+    /**
+     * Constructs an empty price store.
+     */
+    public PriceStore() {
+    }
+
+    /**
+     * Constructs a price store containing the price history.
+     * <p>
+     * Prices with an empty price action period, like the zero-length fragments the original merge
+     * left behind, are not loaded: they are reported as removed by the next {@link #apply(Collection)},
+     * so that writing its changes deletes them from the database.
+     *
+     * @param prices the collection of available prices
+     */
+    public PriceStore(Collection<Price> prices) {
+        for (Price price : prices) {
+            if (price.getEndMillis() <= price.getBeginMillis())
+                emptyPrices.add(price);
+            else
+                timelines.computeIfAbsent(PriceGroupKey.of(price), key -> new PriceTimeline()).apply(price);
+        }
+    }
+
+    /**
+     * The method merges the incoming prices into the store by the rules of
+     * {@link PriceManager#merge(Collection, Collection)} and returns the changes made.
+     * <p>
+     * The changes are folded over the whole collection: a price inserted and then cut by a later
+     * incoming price is reported once as inserted, and an update that leaves a price as it was
+     * is not reported at all.
+     *
+     * @param incomingPrices the collection of incoming prices
+     * @return the changes made to the store
+     * @throws IllegalArgumentException if the price action period of an incoming price is empty
+     */
+    public PriceChangeset apply(Collection<Price> incomingPrices) {
+
+        ChangeRecorder recorder = new ChangeRecorder();
+        recorder.removed.addAll(emptyPrices);
+        emptyPrices.clear();
+        Set<PriceTimeline> touchedTimelines = new LinkedHashSet<>();
+
+        for (Price incomingPrice : incomingPrices) {
+            PriceTimeline timeline = timelines.computeIfAbsent(PriceGroupKey.of(incomingPrice), key -> new PriceTimeline());
+            timeline.apply(incomingPrice, recorder);
+            touchedTimelines.add(timeline);
+        }
+
+        List<Price> inserted = new ArrayList<>();
+        List<Price> updated = new ArrayList<>();
+
+        for (PriceTimeline timeline : touchedTimelines) {
+            for (Price price : timeline.getPrices()) {
+                if (recorder.inserted.containsKey(price)) {
+                    inserted.add(price);
+                } else {
+                    Price origin = recorder.origins.get(price);
+                    if (origin != null && !origin.equals(price))
+                        updated.add(price);
+                }
+            }
+        }
+
+        return new PriceChangeset(inserted, updated, recorder.removed);
+    }
+
+    /**
+     * Replaces the prices of the store by their stored copies carrying the ids generated by the database.
+     * <p>
+     * The prices inserted by {@link #apply(Collection)} have no id until they are written, and the store
+     * must learn the ids before the next apply: otherwise a later cut of such a price is reported as an
+     * update without an id and a later removal cannot be keyed, so the old row stays in the table.
+     *
+     * @param storedPrices the stored copies, like the ones returned by
+     *                     {@link com.prigozhaev.persistence.JdbcPriceRepository#write(PriceChangeset)}
+     * @throws IllegalArgumentException if the store has no price without an id equal to a stored copy
+     */
+    public void assignIds(Collection<Price> storedPrices) {
+        for (Price storedPrice : storedPrices) {
+            PriceTimeline timeline = timelines.get(PriceGroupKey.of(storedPrice));
+            if (storedPrice.getId() == null || timeline == null || !timeline.assignId(storedPrice))
+                throw new IllegalArgumentException("No price without an id matches the stored price: " + storedPrice);
+        }
+    }
+
+    /**
+     * Returns the prices of the group sorted by the start date.
+     *
+     * @param key the price group key
+     * @return an unmodifiable view of the prices, empty if the store has no such group
+     */
+    public Collection<Price> getPrices(PriceGroupKey key) {
+        PriceTimeline timeline = timelines.get(key);
+        return timeline == null ? Collections.emptyList() : timeline.getPrices();
+    }
+
+    /**
+     * Returns all prices of the store, group by group.
+     *
+     * @return a new list of the prices
+     */
+    public List<Price> getPrices() {
+        List<Price> prices = new ArrayList<>();
+        for (PriceTimeline timeline : timelines.values())
+            prices.addAll(timeline.getPrices());
+        return prices;
+    }
+
+    /**
+     * Returns the number of price groups in the store.
+     *
+     * @return the number of price groups
+     */
+    public int groupCount() {
+        return timelines.size();
+    }
+
+    /**
+     * Folds the changes of the timelines into the changes made to the prices
+     * the store held before the import.
+     */
+    private static class ChangeRecorder implements PriceTimelineListener {
+
+        private final Map<Price, Boolean> inserted = new IdentityHashMap<>();
+        private final Map<Price, Price> origins = new IdentityHashMap<>();
+        private final List<Price> removed = new ArrayList<>();
+
+        @Override
+        public void inserted(Price price) {
+            inserted.put(price, Boolean.TRUE);
+        }
+
+        @Override
+        public void updated(Price existingPrice, Price updatedPrice) {
+            if (inserted.remove(existingPrice) != null) {
+                inserted.put(updatedPrice, Boolean.TRUE);
+                return;
+            }
+            Price origin = origins.remove(existingPrice);
+            origins.put(updatedPrice, origin == null ? existingPrice : origin);
+        }
+
+        @Override
+        public void removed(Price existingPrice) {
+            if (inserted.remove(existingPrice) != null)
+                return;
+            Price origin = origins.remove(existingPrice);
+            removed.add(origin == null ? existingPrice : origin);
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The {@code PriceTimeline} class represents the timeline of one price group.
+ * <p>
+ * The timeline keeps non-overlapping prices of the group sorted by the start date,
+ * so the prices affected by an incoming price are found in {@code O(log n + k)},
+ * where {@code k} is the number of the affected prices.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @see PriceManager#merge(Collection, Collection)
+ */
+
+public class PriceTimeline {
+
+    private final NavigableMap<Long, Price> prices = new TreeMap<>();
+
+    /**
+     * Constructs an empty price timeline.
+     */
+    public PriceTimeline() {
+    }
+
+    /**
+     * Constructs a price timeline containing the prices of the group.
+     * The prices are applied in the iteration order of the collection.
+     * <p>
+     * Prices with an empty price action period, like the zero-length fragments the original merge
+     * left behind where prices with different values met, cover no time and are skipped,
+     * so an existing price history can be loaded as is.
+     *
+     * @param prices the prices of one group
+     */
+    public PriceTimeline(Collection<Price> prices) {
+        for (Price price : prices)
+            if (price.getEndMillis() > price.getBeginMillis())
+                apply(price);
+    }
+
+    /**
+     * The method applies the incoming price to the timeline in a single pass
+     * over the prices it intersects with.
+     *
+     * <p>Every existing price intersecting the incoming price in the price action period:</p>
+     * <p> • if the price values are the same, is absorbed by the incoming price,
+     * whose price action period is extended to cover the existing one;</p>
+     * <p> • if the price values differ, is cut to the parts lying outside of
+     * the price action period of the incoming price.</p>
+     *
+     * <p>No price object is ever modified: if the period of a price has to be changed,
+     * a new price derived by {@link Price#withPeriod(long, long, Long)} is put into the timeline
+     * instead, so the timeline of immutable prices consists of immutable prices only.</p>
+     *
+     * @param incomingPrice the incoming price
+     * @throws IllegalArgumentException if the price action period of the incoming price is empty
+     */
+    public void apply(Price incomingPrice) {
+        apply(incomingPrice, PriceTimelineListener.NO_OP);
+    }
+
+    /**
+     * The method applies the incoming price to the timeline like {@link #apply(Price)} does,
+     * reporting the changes to the listener.
+     * <p>
+     * The parts of a cut existing price and the price extended by the incoming one
+     * keep the id of the existing price they come from.
+     *
+     * @param incomingPrice the incoming price
+     * @param listener      the listener of the changes
+     * @throws IllegalArgumentException if the price action period of the incoming price is empty
+     */
+    void apply(Price incomingPrice, PriceTimelineListener listener) {
+
+        long begin = incomingPrice.getBeginMillis();
+        long end = incomingPrice.getEndMillis();
+
+        if (end <= begin)
+            throw new IllegalArgumentException("Price action period is empty: " + incomingPrice);
+
+        Long from = prices.floorKey(begin);
+        if (from == null || prices.get(from).getEndMillis() <= begin)
+            from = begin;
+
+        long mergedBegin = begin;
+        long mergedEnd = end;
+        Price extendedPrice = null;
+        Price head = null;
+        Price tail = null;
+
+        Iterator<Price> affectedPrices = prices.subMap(from, true, end, false).values().iterator();
+        while (affectedPrices.hasNext()) {
+            Price existingPrice = affectedPrices.next();
+            affectedPrices.remove();
+
+            long existingBegin = existingPrice.getBeginMillis();
+            long existingEnd = existingPrice.getEndMillis();
+
+            if (Objects.equals(incomingPrice.getValue(), existingPrice.getValue())) {
+                mergedBegin = Math.min(mergedBegin, existingBegin);
+                mergedEnd = Math.max(mergedEnd, existingEnd);
+                if (extendedPrice == null) {
+                    extendedPrice = existingPrice;
+                    listener.ruleApplied(MergeRule.EXTEND);
+                } else {
+                    listener.ruleApplied(MergeRule.COALESCE);
+                    listener.removed(existingPrice);
+                }
+                continue;
+            }
+
+            if (existingBegin < begin && existingEnd > end) {
+                listener.ruleApplied(MergeRule.SPLIT);
+            } else if (existingBegin < begin || existingEnd > end) {
+                listener.ruleApplied(MergeRule.CUT);
+            } else {
+                listener.ruleApplied(MergeRule.COVER);
+                listener.removed(existingPrice);
+                continue;
+            }
+
+            if (existingBegin < begin) {
+                head = existingPrice.withPeriod(existingBegin, begin, existingPrice.getId());
+                listener.updated(existingPrice, head);
+            }
+
+            if (existingEnd > end) {
+                if (existingBegin < begin) {
+                    tail = existingPrice.withPeriod(end, existingEnd, null);
+                    listener.inserted(tail);
+                } else {
+                    tail = existingPrice.withPeriod(end, existingEnd, existingPrice.getId());
+                    listener.updated(existingPrice, tail);
+                }
+            }
+        }
+
+        if (head != null)
+            prices.put(head.getBeginMillis(), head);
+        if (tail != null)
+            prices.put(tail.getBeginMillis(), tail);
+
+        if (extendedPrice != null) {
+            Price mergedPrice = incomingPrice.withPeriod(mergedBegin, mergedEnd, extendedPrice.getId());
+            prices.put(mergedBegin, mergedPrice);
+            listener.updated(extendedPrice, mergedPrice);
+        } else {
+            prices.put(begin, incomingPrice);
+            listener.ruleApplied(MergeRule.INSERT);
+            listener.inserted(incomingPrice);
+        }
+    }
+
+    /**
+     * Replaces the price without an id that equals the stored copy by the copy.
+     *
+     * @param storedPrice the stored copy of a price carrying its id
+     * @return {@code false} if the timeline has no such price
+     */
+    boolean assignId(Price storedPrice) {
+        Price price = prices.get(storedPrice.getBeginMillis());
+        if (price == null || price.getId() != null || !price.equals(storedPrice))
+            return false;
+        prices.put(storedPrice.getBeginMillis(), storedPrice);
+        return true;
+    }
+
+    /**
+     * Returns the prices of the timeline sorted by the start date.
+     *
+     * @return an unmodifiable view of the prices
+     */
+    public Collection<Price> getPrices() {
+        return Collections.unmodifiableCollection(prices.values());
+    }
+
+    /**
+     * Returns the number of prices in the timeline.
+     *
+     * @return the number of prices
+     */
+    public int size() {
+        return prices.size();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+/**
+ * The {@code PriceTimelineListener} interface receives the changes a {@link PriceTimeline}
+ * makes while applying an incoming price.
+ * <p>
+ * A price that keeps living in the timeline with a changed price action period is reported
+ * as updated, and the updated price carries the id of the existing one.
+ */
+
+interface PriceTimelineListener {
+
+    /**
+     * The listener that ignores all changes.
+     */
+    PriceTimelineListener NO_OP = new PriceTimelineListener() {
+    };
+
+    /**
+     * Called when a new price is put into the timeline.
+     *
+     * @param price the inserted price
+     */
+    default void inserted(Price price) {
+    }
+
+    /**
+     * Called when an existing price is replaced by a price with another price action period.
+     *
+     * @param existingPrice the replaced price
+     * @param updatedPrice  the price put instead of it
+     */
+    default void updated(Price existingPrice, Price updatedPrice) {
+    }
+
+    /**
+     * Called when an existing price is removed from the timeline.
+     *
+     * @param existingPrice the removed price
+     */
+    default void removed(Price existingPrice) {
+    }
+
+    /**
+     * Called every time a branch of the merge rules is applied.
+     *
+     * @param rule the applied rule
+     */
+    default void ruleApplied(MergeRule rule) {
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.prigozhaev;
+
+import com.prigozhaev.model.Price;
+
+import java.util.Random;
+
+/**
+ * Random prices shared by the tests.
+ */
+
+public final class TestPrices {
+
+    private TestPrices() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Returns a random price of one of 200 groups, starting shortly after the offset.
+     *
+     * @param random the source of randomness
+     * @param offset the earliest start time of the price
+     * @return a new price with a currency value
+     */
+    public static Price randomPrice(Random random, long offset) {
+        return randomPrice(random, offset, false);
+    }
+
+    /**
+     * Returns a random price of one of 200 groups, starting shortly after the offset.
+     *
+     * @param random     the source of randomness
+     * @param offset     the earliest start time of the price
+     * @param nullValues {@code true} if every fourth price on average has no currency value
+     * @return a new price
+     */
+    public static Price randomPrice(Random random, long offset, boolean nullValues) {
+        long begin = offset + random.nextInt(100);
+        return new Price("price_" + random.nextInt(50), 1 + random.nextInt(2), 1 + random.nextInt(2),
+                begin, begin + 1 + random.nextInt(50), nullValues && random.nextInt(4) == 0 ? null : (long) random.nextInt(3));
+    }
+
+}
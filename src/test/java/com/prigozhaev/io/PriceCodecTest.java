@@ -0,0 +1,93 @@
+package com.prigozhaev.io;
+
+import com.prigozhaev.model.Price;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PriceCodecTest {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    @Test
+    public void encodeDecodeTest() throws ParseException, IOException {
+        List<Price> prices = new ArrayList<>();
+        prices.add(new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 200L));
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), null));
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), -100L));
+        prices.add(new Price("цена_3", 4, -2, dateFormat.parse("01.10.1969 00:00:00"), dateFormat.parse("01.10.2019 00:00:00"), Long.MAX_VALUE));
+        prices.get(0).setId(7L);
+        prices.get(2).setId(Long.MIN_VALUE);
+
+        List<Price> decoded = PriceCodec.decode(PriceCodec.encode(prices));
+
+        assertEquals(prices.size(), decoded.size());
+        assertEquals(prices.get(2), decoded.get(0));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), decoded.get(0).getId());
+        assertEquals(prices.get(1), decoded.get(1));
+        assertNull(decoded.get(1).getId());
+        assertEquals(prices.get(0), decoded.get(2));
+        assertEquals(Long.valueOf(7L), decoded.get(2).getId());
+        assertEquals(prices.get(3), decoded.get(3));
+        assertTrue(decoded.get(1).getPriceActionPeriod().isInsideIn(decoded.get(2).getPriceActionPeriod()));
+    }
+
+    @Test
+    public void encodeDecodeEmptyTest() throws IOException {
+        assertTrue(PriceCodec.decode(PriceCodec.encode(Collections.emptyList())).isEmpty());
+    }
+
+    @Test
+    public void readConsecutiveRecordsTest() throws ParseException, IOException {
+        List<Price> first = Collections.singletonList(
+                new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        List<Price> second = Collections.singletonList(
+                new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 200L));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PriceCodec.write(first, out);
+        PriceCodec.write(second, out);
+        out.write(42);
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(first, PriceCodec.read(in));
+        assertEquals(second, PriceCodec.read(in));
+        assertEquals(42, in.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeWrongBytesTest() throws IOException {
+        PriceCodec.decode(new byte[]{1, 2, 3, 4, 5});
+    }
+
+    @Test
+    public void javaSerializationTest() throws ParseException, IOException, ClassNotFoundException {
+        Price price = new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(price);
+        }
+        Price deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (Price) in.readObject();
+        }
+
+        assertEquals(price, deserialized);
+        assertTrue(deserialized.getPriceActionPeriod().isInsideIn(price.getPriceActionPeriod()));
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.prigozhaev.io;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+import com.prigozhaev.util.PriceManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PriceHistoryFileTest {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Price> prices;
+    private Path path;
+
+    @Before
+    public void setUp() throws ParseException, IOException {
+        prices = new ArrayList<>();
+        prices.add(new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 200L));
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), null));
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        prices.add(new Price("price_1", 2, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 90L));
+        prices.get(0).setId(7L);
+
+        path = folder.newFile("prices.dat").toPath();
+        PriceHistoryFile.write(path, prices);
+    }
+
+    @Test
+    public void getPricesTest() throws IOException {
+        try (PriceHistoryFile file = PriceHistoryFile.open(path)) {
+            assertEquals(3, file.groupCount());
+            assertEquals(4, file.size());
+
+            assertEquals(2, file.getPrices(new PriceGroupKey("price_1", 1, 1)).size());
+            assertEquals(prices.get(2), file.getPrices(new PriceGroupKey("price_1", 1, 1)).get(0));
+            assertEquals(prices.get(1), file.getPrices(new PriceGroupKey("price_1", 1, 1)).get(1));
+            assertEquals(Collections.singletonList(prices.get(0)), file.getPrices(new PriceGroupKey("price_2", 1, 1)));
+            assertEquals(Long.valueOf(7L), file.getPrices(new PriceGroupKey("price_2", 1, 1)).get(0).getId());
+            assertTrue(file.getPrices(new PriceGroupKey("price_3", 1, 1)).isEmpty());
+            assertTrue(file.getPrices(new PriceGroupKey("price_1", 3, 1)).isEmpty());
+        }
+    }
+
+    @Test
+    public void activePriceTest() throws IOException, ParseException {
+        try (PriceHistoryFile file = PriceHistoryFile.open(path)) {
+            assertEquals(prices.get(2), file.activePrice("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00").getTime()));
+            assertEquals(prices.get(1), file.activePrice("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00").getTime()));
+            assertNull(file.activePrice("price_1", 1, 1, dateFormat.parse("20.10.2019 00:00:00").getTime()));
+            assertNull(file.activePrice("price_1", 1, 1, dateFormat.parse("30.09.2019 00:00:00").getTime()));
+            assertNull(file.activePrice("price_3", 1, 1, dateFormat.parse("05.10.2019 00:00:00").getTime()));
+        }
+    }
+
+    @Test
+    public void mergeSortedFromFileTest() throws IOException, ParseException {
+        List<Price> incomingPrices = Collections.singletonList(
+                new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("15.10.2019 00:00:00"), 150L));
+
+        List<Price> mergedPrices = new ArrayList<>();
+        try (PriceHistoryFile file = PriceHistoryFile.open(path)) {
+            PriceManager.mergeSorted(file.iterator(), incomingPrices.iterator(), mergedPrices::add);
+        }
+
+        List<Price> expectedPrices = new ArrayList<>(PriceManager.merge(prices, incomingPrices));
+        assertEquals(expectedPrices.size(), mergedPrices.size());
+        assertTrue(expectedPrices.containsAll(mergedPrices));
+    }
+
+    @Test
+    public void writeEmptyFileTest() throws IOException {
+        PriceHistoryFile.write(path, Collections.emptyList());
+
+        try (PriceHistoryFile file = PriceHistoryFile.open(path)) {
+            assertEquals(0, file.size());
+            assertTrue(file.getPrices(new PriceGroupKey("price_1", 1, 1)).isEmpty());
+            assertFalse(file.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void rewriteKeepsOpenFileReadableTest() throws IOException {
+        try (PriceHistoryFile file = PriceHistoryFile.open(path)) {
+            PriceHistoryFile.write(path, Collections.singletonList(prices.get(3)));
+
+            assertEquals(4, file.size());
+            assertEquals(2, file.getPrices(new PriceGroupKey("price_1", 1, 1)).size());
+            try (PriceHistoryFile rewrittenFile = PriceHistoryFile.open(path)) {
+                assertEquals(Collections.singletonList(prices.get(3)), rewrittenFile.getPrices(new PriceGroupKey("price_1", 2, 1)));
+                assertEquals(1, rewrittenFile.size());
+            }
+        }
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(Collections.singletonList(path), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void openWrongFileTest() throws IOException {
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+
+        PriceHistoryFile.open(path);
+    }
+
+}
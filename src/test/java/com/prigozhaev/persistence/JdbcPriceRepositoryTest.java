@@ -0,0 +1,279 @@
+package com.prigozhaev.persistence;
+
+import com.prigozhaev.model.ImmutablePrice;
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+import com.prigozhaev.util.PriceManager;
+import com.prigozhaev.util.PriceStore;
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.util.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JdbcPriceRepositoryTest {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    private JdbcDataSource dataSource;
+
+    private Connection keepAlive;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:prices");
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE PRICE (" +
+                    "ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "PRODUCT_CODE VARCHAR(255) NOT NULL, " +
+                    "PRICE_NUMBER INT NOT NULL, " +
+                    "DEPART INT NOT NULL, " +
+                    "BEGIN_DATE TIMESTAMP NOT NULL, " +
+                    "END_DATE TIMESTAMP NOT NULL, " +
+                    "PRICE_VALUE BIGINT)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP TABLE PRICE");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    public void writeAssignsGeneratedIdsTest() throws ParseException, SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource, 2);
+        List<Price> prices = existingPrices();
+
+        List<Price> storedPrices = repository.write(new PriceChangeset(prices, Collections.emptyList(), Collections.emptyList()));
+
+        assertEquals(prices, storedPrices);
+        for (Price price : prices)
+            assertNull(price.getId());
+        for (Price price : storedPrices)
+            assertNotNull(price.getId());
+        assertEquals(3, storedPrices.stream().map(Price::getId).distinct().count());
+        assertEquals(sorted(storedPrices), sorted(repository.findAll()));
+        assertTrue(PriceManager.diff(repository.findAll(), storedPrices).isEmpty());
+    }
+
+    @Test
+    public void writeImmutablePricesTest() throws ParseException, SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource, 2);
+        List<Price> prices = new ArrayList<>();
+        for (Price price : existingPrices())
+            prices.add(ImmutablePrice.of(price));
+
+        List<Price> storedPrices = repository.write(new PriceChangeset(prices, Collections.emptyList(), Collections.emptyList()));
+
+        assertEquals(prices, storedPrices);
+        for (Price price : storedPrices) {
+            assertTrue(price instanceof ImmutablePrice);
+            assertNotNull(price.getId());
+        }
+        assertTrue(PriceManager.diff(repository.findAll(), storedPrices).isEmpty());
+    }
+
+    @Test
+    public void writeMergedChangesetTest() throws ParseException, SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource, 2);
+        repository.write(new PriceChangeset(existingPrices(), Collections.emptyList(), Collections.emptyList()));
+
+        List<Price> storedPrices = repository.findAll();
+        List<Price> incomingPrices = new ArrayList<>();
+        incomingPrices.add(price("05.10.2019 00:00:00", "25.10.2019 00:00:00", 130L));
+        incomingPrices.add(price("27.10.2019 00:00:00", "29.10.2019 00:00:00", null));
+
+        Collection<Price> mergedPrices = PriceManager.merge(storedPrices, incomingPrices);
+        PriceChangeset changeset = PriceManager.diff(storedPrices, mergedPrices);
+        assertEquals(3, changeset.getInserted().size());
+        assertEquals(2, changeset.getUpdated().size());
+        assertEquals(1, changeset.getRemoved().size());
+
+        List<Price> insertedPrices = repository.write(changeset);
+
+        List<Price> reloadedPrices = repository.findAll();
+        assertEquals(sorted(mergedPrices), sorted(reloadedPrices));
+        for (Price price : reloadedPrices)
+            assertNotNull(price.getId());
+
+        List<Price> currentPrices = new ArrayList<>(insertedPrices);
+        currentPrices.addAll(changeset.getUpdated());
+        for (Price price : mergedPrices)
+            if (price.getId() != null && !changeset.getUpdated().contains(price))
+                currentPrices.add(price);
+        assertTrue(PriceManager.diff(reloadedPrices, currentPrices).isEmpty());
+        assertEquals(sorted(mergedPrices), repository.findByGroup(new PriceGroupKey("122856", 1, 1)));
+        assertTrue(repository.findByGroup(new PriceGroupKey("122856", 1, 2)).isEmpty());
+    }
+
+    @Test
+    public void writeRollsBackOnFailureTest() throws ParseException, SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource);
+        List<Price> prices = repository.write(new PriceChangeset(existingPrices(), Collections.emptyList(), Collections.emptyList()));
+
+        Price invalidPrice = price("01.11.2019 00:00:00", "10.11.2019 00:00:00", 100L);
+        invalidPrice.setProductCode(null);
+        try {
+            repository.write(new PriceChangeset(Collections.singletonList(invalidPrice),
+                    Collections.emptyList(), Collections.singletonList(prices.get(0))));
+            fail();
+        } catch (SQLException e) {
+            assertEquals(sorted(prices), sorted(repository.findAll()));
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void writeKeepsIdsUnsetWhenSecondInsertBatchFailsTest() throws ParseException, SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource, 2);
+        List<Price> prices = existingPrices();
+        prices.get(2).setProductCode(null);
+
+        try {
+            repository.write(new PriceChangeset(prices, Collections.emptyList(), Collections.emptyList()));
+            fail();
+        } catch (SQLException e) {
+            for (Price price : prices)
+                assertNull(price.getId());
+            assertTrue(repository.findAll().isEmpty());
+        }
+    }
+
+    @Test
+    public void writeFailsWhenUpdatedPriceIsNotFoundTest() throws ParseException, SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource, 2);
+        List<Price> prices = repository.write(new PriceChangeset(existingPrices(), Collections.emptyList(), Collections.emptyList()));
+
+        Price missingPrice = price("01.11.2019 00:00:00", "10.11.2019 00:00:00", 100L);
+        missingPrice.setId(prices.get(2).getId() + 100);
+        Price updatedPrice = price("01.10.2019 00:00:00", "05.10.2019 00:00:00", 100L);
+        updatedPrice.setId(prices.get(0).getId());
+        try {
+            repository.write(new PriceChangeset(Collections.emptyList(), Arrays.asList(updatedPrice, missingPrice), Collections.emptyList()));
+            fail();
+        } catch (SQLException e) {
+            assertEquals(sorted(prices), sorted(repository.findAll()));
+        }
+        try {
+            repository.write(new PriceChangeset(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(missingPrice)));
+            fail();
+        } catch (SQLException e) {
+            assertEquals(sorted(prices), sorted(repository.findAll()));
+        }
+    }
+
+    @Test
+    public void storeWritesWithoutOverlapsTest() throws SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource);
+        PriceStore store = new PriceStore();
+
+        store.assignIds(repository.write(store.apply(Collections.singletonList(new Price("122856", 1, 1, 0, 100_000, 1L)))));
+        Long id = repository.findAll().get(0).getId();
+        store.assignIds(repository.write(store.apply(Collections.singletonList(new Price("122856", 1, 1, 50_000, 150_000, 2L)))));
+
+        List<Price> storedPrices = sorted(repository.findAll());
+        assertEquals(Arrays.asList(new Price("122856", 1, 1, 0, 50_000, 1L), new Price("122856", 1, 1, 50_000, 150_000, 2L)),
+                storedPrices);
+        assertEquals(id, storedPrices.get(0).getId());
+        assertTrue(PriceManager.diff(storedPrices, store.getPrices()).isEmpty());
+    }
+
+    @Test
+    public void timestampsAreStoredInUtcTest() throws SQLException {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            // both ends are 01:30 in New York: the clocks go back from daylight saving time in between
+            setDefaultTimeZone("America/New_York");
+            long begin = Instant.parse("2019-11-03T05:30:00Z").toEpochMilli();
+            long end = Instant.parse("2019-11-03T06:30:00Z").toEpochMilli();
+            JdbcPriceRepository repository = new JdbcPriceRepository(dataSource);
+            repository.write(new PriceChangeset(Collections.singletonList(new Price("122856", 1, 1, begin, end, 100L)),
+                    Collections.emptyList(), Collections.emptyList()));
+
+            try (Statement statement = keepAlive.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT CAST(BEGIN_DATE AS VARCHAR), CAST(END_DATE AS VARCHAR) FROM PRICE")) {
+                assertTrue(resultSet.next());
+                assertEquals("2019-11-03 05:30:00", resultSet.getString(1));
+                assertEquals("2019-11-03 06:30:00", resultSet.getString(2));
+            }
+
+            setDefaultTimeZone("Asia/Tokyo");
+            Price price = repository.findAll().get(0);
+            assertEquals(begin, price.getBeginMillis());
+            assertEquals(end, price.getEndMillis());
+        } finally {
+            TimeZone.setDefault(defaultZone);
+            DateTimeUtils.resetCalendar();
+        }
+    }
+
+    @Test
+    public void writeEmptyChangesetTest() throws SQLException {
+        JdbcPriceRepository repository = new JdbcPriceRepository(dataSource);
+        repository.write(new PriceChangeset(Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
+        assertFalse(repository.findAll().iterator().hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSizeTest() {
+        new JdbcPriceRepository(dataSource, 0);
+    }
+
+    /**
+     * Changes the default time zone of the JVM, also for the driver that caches it.
+     */
+    private static void setDefaultTimeZone(String zone) {
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        DateTimeUtils.resetCalendar();
+    }
+
+    private List<Price> existingPrices() throws ParseException {
+        List<Price> prices = new ArrayList<>();
+        prices.add(price("01.10.2019 00:00:00", "10.10.2019 00:00:00", 100L));
+        prices.add(price("10.10.2019 00:00:00", "20.10.2019 00:00:00", 110L));
+        prices.add(price("20.10.2019 00:00:00", "31.10.2019 00:00:00", 120L));
+        return prices;
+    }
+
+    private static List<Price> sorted(Collection<Price> prices) {
+        List<Price> result = new ArrayList<>(prices);
+        result.sort(Comparator.comparingLong(Price::getBeginMillis));
+        return result;
+    }
+
+    private Price price(String begin, String end, Long value) throws ParseException {
+        return new Price("122856", 1, 1, dateFormat.parse(begin), dateFormat.parse(end), value);
+    }
+
+}
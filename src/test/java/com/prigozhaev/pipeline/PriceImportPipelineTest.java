@@ -0,0 +1,255 @@
+package com.prigozhaev.pipeline;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+import com.prigozhaev.util.PriceManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.prigozhaev.TestPrices.randomPrice;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PriceImportPipelineTest {
+
+    private static final Comparator<Price> PRICE_ORDER = Comparator.comparing(Price::getProductCode)
+            .thenComparingInt(Price::getNumber)
+            .thenComparingInt(Price::getDepart)
+            .thenComparingLong(Price::getBeginMillis);
+
+    @Test
+    public void pipelineMatchesMergeTest() throws InterruptedException {
+        Random random = new Random(42);
+        List<Price> existingPrices = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            existingPrices.add(randomPrice(random, i * 10L));
+
+        List<List<Price>> inputs = new ArrayList<>();
+        List<Price> incomingPrices = new ArrayList<>();
+        for (int input = 0; input < 20; input++) {
+            List<Price> prices = new ArrayList<>();
+            for (int i = 0; i < 50; i++)
+                prices.add(randomPrice(random, random.nextInt(5000)));
+            inputs.add(prices);
+            incomingPrices.addAll(prices);
+        }
+
+        List<List<Price>> publishedInputs = new CopyOnWriteArrayList<>();
+        List<PriceChangeset> changesets = new CopyOnWriteArrayList<>();
+        PriceImportPipeline<List<Price>> pipeline = new PriceImportPipeline<>(existingPrices, prices -> prices, (input, changeset) -> {
+            publishedInputs.add(input);
+            changesets.add(changeset);
+            return Collections.emptyList();
+        }, 4, 2);
+        for (List<Price> input : inputs)
+            pipeline.submit(input);
+        pipeline.close();
+
+        assertEquals(sorted(PriceManager.merge(existingPrices, incomingPrices)), sorted(pipeline.getPrices()));
+
+        // one changeset per input, in the order of submission, touching only the groups of the input
+        assertEquals(inputs.size(), publishedInputs.size());
+        for (int input = 0; input < inputs.size(); input++) {
+            assertSame(inputs.get(input), publishedInputs.get(input));
+            Set<PriceGroupKey> keys = inputs.get(input).stream().map(PriceGroupKey::of).collect(Collectors.toSet());
+            PriceChangeset changeset = changesets.get(input);
+            assertFalse(changeset.isEmpty());
+            for (Price price : changeset.getInserted())
+                assertTrue(keys.contains(PriceGroupKey.of(price)));
+            for (Price price : changeset.getRemoved())
+                assertTrue(keys.contains(PriceGroupKey.of(price)));
+        }
+
+        PipelineStatistics statistics = pipeline.getStatistics();
+        assertEquals(20, statistics.getInputs());
+        assertEquals(incomingPrices.size(), statistics.getParsedPrices());
+        assertEquals(incomingPrices.size(), statistics.getMergedPrices());
+        assertEquals(changesets.size(), statistics.getPublishedChangesets());
+        assertEquals(0, statistics.getInputQueueDepth() + statistics.getShardQueueDepth() + statistics.getSinkQueueDepth());
+        assertTrue(statistics.getPricesPerSecond() > 0);
+    }
+
+    @Test
+    public void storedIdsAreFedBackTest() throws InterruptedException {
+        // the sink keeps a table keyed by id the way the repository does
+        Map<Long, Price> table = new HashMap<>();
+        AtomicLong nextId = new AtomicLong();
+        PriceImportPipeline<List<Price>> pipeline = new PriceImportPipeline<>(prices -> prices, (input, changeset) -> {
+            // every price changed after it was inserted is keyed by its id
+            for (Price price : changeset.getRemoved())
+                assertNotNull(table.remove(price.getId()));
+            for (Price price : changeset.getUpdated())
+                assertNotNull(table.put(price.getId(), price));
+            List<Price> storedPrices = new ArrayList<>();
+            for (Price price : changeset.getInserted()) {
+                Price storedPrice = price.withId(nextId.incrementAndGet());
+                table.put(storedPrice.getId(), storedPrice);
+                storedPrices.add(storedPrice);
+            }
+            return storedPrices;
+        }, 3, 2);
+
+        Random random = new Random(11);
+        for (int input = 0; input < 30; input++) {
+            List<Price> prices = new ArrayList<>();
+            for (int i = 0; i < 40; i++)
+                prices.add(randomPrice(random, random.nextInt(3000)));
+            pipeline.submit(prices);
+        }
+        pipeline.close();
+
+        List<Price> prices = pipeline.getPrices();
+        assertEquals(sorted(prices), sorted(table.values()));
+        for (Price price : prices)
+            assertEquals(table.get(price.getId()), price);
+    }
+
+    @Test
+    public void slowSinkThrottlesSubmitTest() throws InterruptedException {
+        CountDownLatch sinkReleased = new CountDownLatch(1);
+        PriceImportPipeline<Price> pipeline = new PriceImportPipeline<>(Collections::singletonList, (input, changeset) -> {
+            try {
+                sinkReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }, 1, 1);
+
+        Random random = new Random(1);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++)
+                    pipeline.submit(randomPrice(random, i * 1000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+
+        assertTrue(producer.isAlive());
+        PipelineStatistics statistics = pipeline.getStatistics();
+        assertTrue(statistics.getInputs() < 100);
+        assertTrue(statistics.getInputQueueDepth() <= 1);
+        assertTrue(statistics.getMaxShardQueueDepth() <= 1);
+        assertTrue(statistics.getSinkQueueDepth() <= 1);
+
+        sinkReleased.countDown();
+        producer.join();
+        pipeline.close();
+
+        assertEquals(100, pipeline.getStatistics().getMergedPrices());
+        assertEquals(100, pipeline.getPrices().size());
+    }
+
+    @Test(timeout = 10_000)
+    public void interruptedCloseReturnsEarlyTest() throws InterruptedException {
+        CountDownLatch sinkReleased = new CountDownLatch(1);
+        PriceImportPipeline<Price> pipeline = new PriceImportPipeline<>(Collections::singletonList, (input, changeset) -> {
+            try {
+                sinkReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }, 1, 1);
+
+        pipeline.submit(randomPrice(new Random(5), 0));
+        Thread.currentThread().interrupt();
+        pipeline.close();
+
+        assertTrue(Thread.interrupted());
+        try {
+            pipeline.getPrices();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Pipeline is not closed", e.getMessage());
+        }
+
+        sinkReleased.countDown();
+        pipeline.close();
+        assertEquals(1, pipeline.getPrices().size());
+    }
+
+    @Test
+    public void failureIsReportedOnCloseTest() throws InterruptedException {
+        PriceImportPipeline<String> pipeline = new PriceImportPipeline<>(input -> {
+            throw new IllegalArgumentException(input);
+        }, (input, changeset) -> Collections.emptyList(), 2, 1);
+
+        pipeline.submit("broken file");
+        try {
+            pipeline.close();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken file", e.getCause().getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void parserErrorIsReportedOnCloseTest() throws InterruptedException {
+        PriceImportPipeline<String> pipeline = new PriceImportPipeline<>(input -> {
+            throw new AssertionError(input);
+        }, (input, changeset) -> Collections.emptyList(), 2, 1);
+
+        pipeline.submit("broken file");
+        try {
+            for (int i = 0; i < 10; i++)
+                pipeline.submit("another file");
+            pipeline.close();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken file", e.getCause().getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void sinkErrorIsReportedOnCloseTest() throws InterruptedException {
+        PriceImportPipeline<Price> pipeline = new PriceImportPipeline<>(Collections::singletonList, (input, changeset) -> {
+            throw new AssertionError("sink failed");
+        }, 2, 1);
+
+        Random random = new Random(3);
+        try {
+            for (int i = 0; i < 100; i++)
+                pipeline.submit(randomPrice(random, i * 1000L));
+            pipeline.close();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("sink failed", e.getCause().getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submitAfterCloseTest() throws InterruptedException {
+        PriceImportPipeline<Collection<Price>> pipeline = new PriceImportPipeline<>(prices -> prices, (input, changeset) -> Collections.emptyList(), 1, 1);
+        pipeline.close();
+        pipeline.submit(Collections.emptyList());
+    }
+
+    private static List<Price> sorted(Collection<Price> prices) {
+        List<Price> result = new ArrayList<>(prices);
+        result.sort(PRICE_ORDER);
+        return result;
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ActivePriceIndexTest {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    private List<Price> prices;
+
+    @Before
+    public void setUp() throws ParseException {
+        prices = new ArrayList<>();
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 110L));
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("25.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 120L));
+        prices.add(new Price("price_1", 2, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 90L));
+        prices.add(new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 200L));
+    }
+
+    @Test
+    public void activePriceTest() throws ParseException {
+        ActivePriceIndex index = ActivePriceIndex.build(prices);
+
+        assertEquals(prices.get(1), index.activePrice("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00")));
+        assertEquals(prices.get(1), index.activePrice("price_1", 1, 1, dateFormat.parse("09.10.2019 23:59:59")));
+        assertEquals(prices.get(0), index.activePrice("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00")));
+        assertEquals(prices.get(2), index.activePrice("price_1", 1, 1, dateFormat.parse("30.10.2019 00:00:00")));
+        assertEquals(prices.get(3), index.activePrice("price_1", 2, 1, dateFormat.parse("15.10.2019 00:00:00")));
+    }
+
+    @Test
+    public void activePriceNotFoundTest() throws ParseException {
+        ActivePriceIndex index = ActivePriceIndex.build(prices);
+
+        assertNull(index.activePrice("price_1", 1, 1, dateFormat.parse("30.09.2019 00:00:00")));
+        assertNull(index.activePrice("price_1", 1, 1, dateFormat.parse("22.10.2019 00:00:00")));
+        assertNull(index.activePrice("price_1", 1, 1, dateFormat.parse("31.10.2019 00:00:00")));
+        assertNull(index.activePrice("price_1", 1, 2, dateFormat.parse("15.10.2019 00:00:00")));
+        assertNull(index.activePrice("price_3", 1, 1, dateFormat.parse("15.10.2019 00:00:00")));
+    }
+
+    @Test
+    public void activePricesTest() throws ParseException {
+        ActivePriceIndex index = ActivePriceIndex.build(prices);
+
+        Map<String, Price> activePrices = index.activePrices(Arrays.asList("price_1", "price_2", "price_3"), 1, 1,
+                dateFormat.parse("15.10.2019 00:00:00").getTime());
+
+        assertEquals(2, activePrices.size());
+        assertEquals(prices.get(0), activePrices.get("price_1"));
+        assertEquals(prices.get(4), activePrices.get("price_2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildWithIntersectingPricesTest() throws ParseException {
+        prices.add(new Price("price_1", 1, 1, dateFormat.parse("15.10.2019 00:00:00"), dateFormat.parse("26.10.2019 00:00:00"), 130L));
+
+        ActivePriceIndex.build(prices);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static com.prigozhaev.TestPrices.randomPrice;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BufferedPriceMergerTest {
+
+    @Test
+    public void mergeMatchesPriceManagerTest() {
+        Random random = new Random(7);
+        BufferedPriceMerger merger = new BufferedPriceMerger();
+
+        for (int round = 0; round < 50; round++) {
+            List<Price> existingPrices = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(300); i++) {
+                Price price = randomPrice(random, i * 20L, true);
+                price.setId((long) i);
+                existingPrices.add(price);
+            }
+            List<Price> incomingPrices = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(300); i++)
+                incomingPrices.add(randomPrice(random, random.nextInt(6000), true));
+
+            List<Price> expected = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+            List<Price> actual = merger.merge(existingPrices, incomingPrices);
+
+            assertEquals(expected, actual);
+            assertEquals(ids(expected), ids(actual));
+        }
+    }
+
+    @Test
+    public void mergeKeepsUnchangedPricesTest() {
+        Price untouched = new Price("price_1", 1, 1, 0L, 100L, 10L);
+        Price shortened = new Price("price_2", 1, 1, 0L, 100L, 10L);
+        shortened.setId(2L);
+        Price incoming = new Price("price_2", 1, 1, 50L, 150L, 20L);
+
+        List<Price> result = new BufferedPriceMerger().merge(
+                Arrays.asList(untouched, shortened), new LinkedHashSet<>(Collections.singleton(incoming)));
+
+        assertEquals(3, result.size());
+        assertSame(untouched, result.get(0));
+        assertEquals(new Price("price_2", 1, 1, 0L, 50L, 10L), result.get(1));
+        assertEquals(Long.valueOf(2L), result.get(1).getId());
+        assertSame(incoming, result.get(2));
+        assertEquals(100L, shortened.getEndMillis());
+    }
+
+    @Test
+    public void mergeWithoutExistingPricesTest() {
+        List<Price> incomingPrices = Collections.singletonList(new Price("price_1", 1, 1, 0L, 100L, 10L));
+        assertEquals(incomingPrices, new BufferedPriceMerger().merge(Collections.emptyList(), incomingPrices));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeWithoutPricesTest() {
+        new BufferedPriceMerger().merge(null, Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeEmptyPeriodTest() {
+        new BufferedPriceMerger().merge(Collections.singletonList(new Price("price_1", 1, 1, 0L, 100L, 10L)),
+                Collections.singletonList(new Price("price_1", 1, 1, 100L, 100L, 20L)));
+    }
+
+    private static List<Long> ids(Collection<Price> prices) {
+        return prices.stream().map(Price::getId).collect(Collectors.toList());
+    }
+
+}
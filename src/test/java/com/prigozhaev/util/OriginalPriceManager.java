@@ -0,0 +1,147 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The merge of {@link PriceManager} as it was before the price timeline, kept as the oracle of the tests.
+ * <p>
+ * The merge itself is copied verbatim. It modifies the incoming prices, so {@link #merge(Collection, Collection)}
+ * runs it on copies. The original model fixed the price action period of a price when the price was constructed,
+ * and setting the start or the end date later did not move the period; the copies are {@link OriginalPrice}s,
+ * which restore that behaviour.
+ */
+
+final class OriginalPriceManager {
+
+    private OriginalPriceManager() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Merges copies of the prices by the original rules.
+     * The copies keep the ids of the prices; the prices themselves are not modified.
+     *
+     * @param existingPrices the collection of available prices
+     * @param incomingPrices the collection of incoming prices
+     * @return a new list of the combined prices in the order of the original merge
+     */
+    static List<Price> merge(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+        return new ArrayList<>(originalMerge(copies(existingPrices), copies(incomingPrices)));
+    }
+
+    private static List<Price> copies(Collection<Price> prices) {
+        if (prices == null)
+            return null;
+        List<Price> copies = new ArrayList<>(prices.size());
+        for (Price price : prices)
+            copies.add(new OriginalPrice(price));
+        return copies;
+    }
+
+    private static Collection<Price> originalMerge(Collection<Price> existingPrices, Collection<Price> incomingPrices) {
+
+        if ((existingPrices == null || existingPrices.isEmpty()) && (incomingPrices == null || incomingPrices.isEmpty()))
+            throw new IllegalArgumentException("Missing valid data for merge");
+
+        if (existingPrices == null || existingPrices.isEmpty())
+            return incomingPrices;
+
+        if (incomingPrices == null || incomingPrices.isEmpty())
+            return existingPrices;
+
+        List<Price> result = new ArrayList<>(existingPrices);
+
+        for (Price incomingPrice : incomingPrices) {
+            List<Price> existingPricesGroup = result.stream()
+                    .filter(existingPrice -> isContain(existingPrice, incomingPrice))
+                    .collect(Collectors.toList());
+            result.removeAll(existingPricesGroup);
+            result.addAll(getPriceListForGroup(existingPricesGroup, incomingPrice));
+        }
+
+        return result;
+    }
+
+    private static Collection<Price> getPriceListForGroup(List<Price> existingPricesGroup, Price incomingPrice) {
+
+        List<Price> groupOfPricesList = new ArrayList<>();
+
+        if (existingPricesGroup.isEmpty()) {
+            groupOfPricesList.add(incomingPrice);
+            return groupOfPricesList;
+        }
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().isInsideIn(existingPrice.getPriceActionPeriod()))
+                .findFirst()
+                .ifPresent(existingPrice -> {
+                    if (incomingPrice.getValue().equals(existingPrice.getValue())) {
+                        incomingPrice.setBegin(existingPrice.getBegin());
+                        incomingPrice.setEnd(existingPrice.getEnd());
+                    } else {
+                        groupOfPricesList.add(new Price(existingPrice, existingPrice.getBegin(), incomingPrice.getBegin()));
+                        groupOfPricesList.add(new Price(existingPrice, incomingPrice.getEnd(), existingPrice.getEnd()));
+                    }
+                });
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().haveIntersectionOnTheRightWith(existingPrice.getPriceActionPeriod()))
+                .findFirst()
+                .ifPresent(existingPrice -> {
+                    if (incomingPrice.getValue().equals(existingPrice.getValue()))
+                        incomingPrice.setEnd(existingPrice.getEnd());
+                    else
+                        groupOfPricesList.add(new Price(existingPrice, incomingPrice.getEnd(), existingPrice.getEnd()));
+                });
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().haveIntersectionOnTheLeftWith(existingPrice.getPriceActionPeriod()))
+                .findFirst()
+                .ifPresent(existingPrice -> {
+                    if (incomingPrice.getValue().equals(existingPrice.getValue()))
+                        incomingPrice.setBegin(existingPrice.getBegin());
+                    else
+                        groupOfPricesList.add(new Price(existingPrice, existingPrice.getBegin(), incomingPrice.getBegin()));
+                });
+
+        existingPricesGroup.stream()
+                .filter(existingPrice -> incomingPrice.getPriceActionPeriod().doesNotIntersectionWith(existingPrice.getPriceActionPeriod()))
+                .forEachOrdered(groupOfPricesList::add);
+
+        groupOfPricesList.add(incomingPrice);
+
+        return groupOfPricesList;
+    }
+
+    private static boolean isContain(Price existingPrice, Price incomingPrice) {
+        return existingPrice.getProductCode().equals(incomingPrice.getProductCode()) &&
+                existingPrice.getNumber() == incomingPrice.getNumber() &&
+                existingPrice.getDepart() == incomingPrice.getDepart();
+    }
+
+    /**
+     * A copy of a price whose price action period stays as it was when the copy was made.
+     */
+    private static final class OriginalPrice extends Price {
+
+        private final PriceActionPeriod priceActionPeriod;
+
+        private OriginalPrice(Price price) {
+            super(price, price.getBeginMillis(), price.getEndMillis());
+            setId(price.getId());
+            priceActionPeriod = new PriceActionPeriod(price.getBeginMillis(), price.getEndMillis());
+        }
+
+        @Override
+        public PriceActionPeriod getPriceActionPeriod() {
+            return priceActionPeriod;
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import com.prigozhaev.model.PriceGroupKey;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PriceGroupCacheTest {
+
+    private final Map<PriceGroupKey, List<Price>> storage = new HashMap<>();
+
+    private final Map<PriceGroupKey, Integer> loads = new HashMap<>();
+
+    private final PriceGroupLoader loader = key -> {
+        loads.merge(key, 1, Integer::sum);
+        return storage.get(key);
+    };
+
+    @Before
+    public void setUp() {
+        for (int product = 1; product <= 3; product++) {
+            List<Price> prices = new ArrayList<>();
+            for (int i = 0; i < product; i++)
+                prices.add(new Price("price_" + product, 1, 1, (product - i) * 100L, (product - i + 1) * 100L, (long) i));
+            storage.put(new PriceGroupKey("price_" + product, 1, 1), prices);
+        }
+    }
+
+    @Test
+    public void getLoadsMissesOnceTest() {
+        PriceGroupCache cache = new PriceGroupCache(loader, 100);
+        PriceGroupKey key = new PriceGroupKey("price_3", 1, 1);
+
+        List<Price> prices = cache.get(key);
+        assertSame(prices, cache.get(key));
+        assertEquals(Arrays.asList(100L, 200L, 300L), Arrays.asList(prices.get(0).getBeginMillis(),
+                prices.get(1).getBeginMillis(), prices.get(2).getBeginMillis()));
+        assertEquals(Collections.emptyList(), cache.get(new PriceGroupKey("price_4", 1, 1)));
+
+        assertEquals(Integer.valueOf(1), loads.get(key));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1.0 / 3, cache.getHitRatio(), 0.0001);
+        assertEquals(4, cache.getWeight());
+    }
+
+    @Test
+    public void activePriceTest() {
+        PriceGroupCache cache = new PriceGroupCache(loader, 100);
+
+        assertEquals(Long.valueOf(1L), cache.activePrice("price_3", 1, 1, 250L).getValue());
+        assertNull(cache.activePrice("price_3", 1, 1, 400L));
+        assertNull(cache.activePrice("price_3", 1, 1, 50L));
+        assertNull(cache.activePrice("price_4", 1, 1, 250L));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedGroupsTest() {
+        PriceGroupCache cache = new PriceGroupCache(loader, 5);
+        PriceGroupKey first = new PriceGroupKey("price_1", 1, 1);
+        PriceGroupKey second = new PriceGroupKey("price_2", 1, 1);
+        PriceGroupKey third = new PriceGroupKey("price_3", 1, 1);
+
+        cache.get(first);
+        cache.get(second);
+        cache.get(first);
+        cache.get(third);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getGroupCount());
+        assertEquals(4, cache.getWeight());
+
+        cache.get(first);
+        cache.get(second);
+        assertEquals(Integer.valueOf(1), loads.get(first));
+        assertEquals(Integer.valueOf(2), loads.get(second));
+    }
+
+    @Test
+    public void invalidateChangedGroupsTest() {
+        PriceGroupCache cache = new PriceGroupCache(loader, 100, prices -> 1);
+        PriceGroupKey first = new PriceGroupKey("price_1", 1, 1);
+        PriceGroupKey second = new PriceGroupKey("price_2", 1, 1);
+        cache.get(first);
+        cache.get(second);
+
+        Price updatedPrice = new Price("price_2", 1, 1, 200L, 250L, 0L);
+        cache.invalidate(new PriceChangeset(Collections.emptyList(), Collections.singletonList(updatedPrice), Collections.emptyList()));
+        storage.put(second, Collections.singletonList(updatedPrice));
+
+        assertEquals(1, cache.getGroupCount());
+        assertEquals(Collections.singletonList(updatedPrice), cache.get(second));
+        cache.get(first);
+        assertEquals(Integer.valueOf(1), loads.get(first));
+        assertEquals(Integer.valueOf(2), loads.get(second));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getGroupCount());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void invalidationDuringLoadTest() {
+        PriceGroupKey first = new PriceGroupKey("price_1", 1, 1);
+        PriceGroupKey second = new PriceGroupKey("price_2", 1, 1);
+        PriceGroupKey[] invalidatedKey = new PriceGroupKey[1];
+        PriceGroupCache[] caches = new PriceGroupCache[1];
+        PriceGroupCache cache = new PriceGroupCache(key -> {
+            // another thread invalidates a group while this one is being loaded
+            caches[0].invalidate(invalidatedKey[0]);
+            return loader.load(key);
+        }, 100);
+        caches[0] = cache;
+
+        invalidatedKey[0] = second;
+        cache.get(first);
+        assertEquals(1, cache.getGroupCount());
+
+        invalidatedKey[0] = first;
+        cache.get(second);
+        cache.get(first);
+        assertEquals(1, cache.getGroupCount());
+        assertEquals(storage.get(first), cache.get(first));
+        assertEquals(Integer.valueOf(3), loads.get(first));
+    }
+
+    @Test
+    public void invalidateCountsGroupsOnceTest() {
+        PriceGroupCache cache = new PriceGroupCache(loader, 100);
+        cache.get(new PriceGroupKey("price_3", 1, 1));
+
+        cache.invalidate(storage.get(new PriceGroupKey("price_3", 1, 1)));
+        assertEquals(1, cache.getInvalidationCount());
+
+        List<Price> changedPrices = new ArrayList<>(storage.get(new PriceGroupKey("price_2", 1, 1)));
+        cache.invalidate(new PriceChangeset(changedPrices.subList(0, 1), changedPrices.subList(1, 2), changedPrices));
+        assertEquals(2, cache.getInvalidationCount());
+        assertEquals(0, cache.getGroupCount());
+    }
+
+    @Test
+    public void loaderFailureTest() {
+        PriceGroupCache cache = new PriceGroupCache(key -> {
+            throw new IOException("unavailable");
+        }, 100);
+        try {
+            cache.get(new PriceGroupKey("price_1", 1, 1));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("unavailable", e.getCause().getMessage());
+        }
+        assertEquals(0, cache.getGroupCount());
+    }
+
+}
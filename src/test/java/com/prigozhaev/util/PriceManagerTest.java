@@ -1,17 +1,33 @@
 package com.prigozhaev.util;
 
+import com.prigozhaev.model.CompactionResult;
+import com.prigozhaev.model.ImmutablePrice;
 import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceBatch;
+import com.prigozhaev.model.PriceGroupKey;
+import com.prigozhaev.model.ProductCodeDictionary;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+import static com.prigozhaev.TestPrices.randomPrice;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -236,4 +252,461 @@ public class PriceManagerTest {
         assertTrue(result.containsAll(mergedPrices) && result.size() == mergedPrices.size());
     }
 
+    @Test
+    public void mergePricesCoveringSeveralExistingPricesTest() throws ParseException {
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 110L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("20.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 120L));
+        incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("25.10.2019 00:00:00"), 130L));
+
+        result.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("05.10.2019 00:00:00"), 100L));
+        result.add(new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("25.10.2019 00:00:00"), 130L));
+        result.add(new Price("price_1", 1, 1, dateFormat.parse("25.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 120L));
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+
+        assertTrue(result.containsAll(mergedPrices) && result.size() == mergedPrices.size());
+    }
+
+    @Test
+    public void mergePricesWithEqualsValuesOnBothSidesTest() throws ParseException {
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 200L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("20.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 100L));
+        incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("25.10.2019 00:00:00"), 100L));
+
+        result.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 100L));
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+
+        assertTrue(result.containsAll(mergedPrices) && result.size() == mergedPrices.size());
+    }
+
+    @Test
+    public void mergePricesWithSamePeriodTest() throws ParseException {
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 200L));
+
+        result.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 200L));
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+
+        assertTrue(result.containsAll(mergedPrices) && result.size() == mergedPrices.size());
+    }
+
+    @Test
+    public void mergeOrderAndIdsDifferFromOriginalMergeTest() throws ParseException {
+        existingPrices.add(price("price_1", 1L, "01.10.2019 00:00:00", "10.10.2019 00:00:00", 100L));
+        existingPrices.add(price("price_2", 2L, "01.10.2019 00:00:00", "10.10.2019 00:00:00", 200L));
+        existingPrices.add(price("price_1", 3L, "10.10.2019 00:00:00", "20.10.2019 00:00:00", 110L));
+        existingPrices.add(price("price_3", 4L, "01.10.2019 00:00:00", "31.10.2019 00:00:00", 300L));
+        incomingPrices.add(price("price_2", null, "05.10.2019 00:00:00", "15.10.2019 00:00:00", 210L));
+        incomingPrices.add(price("price_1", null, "15.10.2019 00:00:00", "25.10.2019 00:00:00", 110L));
+        incomingPrices.add(price("price_4", null, "01.10.2019 00:00:00", "05.10.2019 00:00:00", 400L));
+
+        List<Price> originalPrices = OriginalPriceManager.merge(existingPrices, incomingPrices);
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+
+        // the original merge moves the touched groups to the end, the merge keeps the groups in place
+        assertEquals(Arrays.asList("price_3", "price_2", "price_2", "price_1", "price_1", "price_4"), productCodes(originalPrices));
+        assertEquals(Arrays.asList("price_1", "price_1", "price_2", "price_2", "price_3", "price_4"), productCodes(mergedPrices));
+        assertEquals(inGroupOrder(originalPrices), mergedPrices);
+
+        // the original merge leaves the cut and the extended price without an id, the merge keeps their ids
+        assertEquals(Arrays.asList(4L, null, null, 1L, null, null), ids(originalPrices));
+        assertEquals(Arrays.asList(1L, 3L, 2L, null, 4L, null), ids(mergedPrices));
+    }
+
+    @Test
+    public void mergePricesDoesNotModifyIncomingPricesTest() throws ParseException {
+        Price incomingPrice = new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("15.10.2019 00:00:00"), 100L);
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        incomingPrices.add(incomingPrice);
+
+        PriceManager.merge(existingPrices, incomingPrices);
+
+        assertEquals(dateFormat.parse("05.10.2019 00:00:00"), incomingPrice.getBegin());
+        assertEquals(dateFormat.parse("15.10.2019 00:00:00"), incomingPrice.getEnd());
+    }
+
+    @Test
+    public void mergeHistoryWithZeroLengthPricesTest() throws ParseException {
+        // the original merge of [01.10, 05.10) 110 into [01.10, 10.10) 100 left a zero-length head behind
+        existingPrices.add(price(1L, "01.10.2019 00:00:00", "01.10.2019 00:00:00", 100L));
+        existingPrices.add(price(2L, "05.10.2019 00:00:00", "10.10.2019 00:00:00", 100L));
+        existingPrices.add(price(3L, "01.10.2019 00:00:00", "05.10.2019 00:00:00", 110L));
+        incomingPrices.add(price(null, "03.10.2019 00:00:00", "07.10.2019 00:00:00", 120L));
+
+        result.add(price(3L, "01.10.2019 00:00:00", "03.10.2019 00:00:00", 110L));
+        result.add(price(null, "03.10.2019 00:00:00", "07.10.2019 00:00:00", 120L));
+        result.add(price(2L, "07.10.2019 00:00:00", "10.10.2019 00:00:00", 100L));
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+        assertEquals(result, mergedPrices);
+        assertEquals(ids(result), ids(mergedPrices));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(mergedPrices, PriceManager.parallelMerge(existingPrices, incomingPrices, pool, 1));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(mergedPrices, PriceManager.mergeAll(existingPrices, Collections.singletonList(incomingPrices)));
+        assertEquals(mergedPrices, new BufferedPriceMerger().merge(existingPrices, incomingPrices));
+        List<Price> batchPrices = PriceManager.mergeBatches(PriceBatch.of(existingPrices), PriceBatch.of(incomingPrices)).toPrices();
+        assertEquals(mergedPrices, batchPrices);
+        assertEquals(ids(mergedPrices), ids(batchPrices));
+
+        List<Price> existing = new ArrayList<>(existingPrices);
+        assertEquals(Collections.singletonList(existing.get(0)), PriceManager.diff(existingPrices, mergedPrices).getRemoved());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeZeroLengthIncomingPriceTest() throws ParseException {
+        existingPrices.add(price(1L, "01.10.2019 00:00:00", "01.10.2019 00:00:00", 100L));
+        incomingPrices.add(price(null, "05.10.2019 00:00:00", "05.10.2019 00:00:00", 110L));
+
+        PriceManager.merge(existingPrices, incomingPrices);
+    }
+
+    @Test
+    public void parallelMergeProducesSameResultAsMergeTest() {
+        Random random = new Random(1);
+        for (int i = 0; i < 2_000; i++) {
+            existingPrices.add(randomPrice(random, i * 10L));
+            incomingPrices.add(randomPrice(random, i * 10L));
+        }
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(mergedPrices, PriceManager.parallelMerge(existingPrices, incomingPrices, pool, 8));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelMergeWithWrongThresholdTest() {
+        PriceManager.parallelMerge(existingPrices, incomingPrices, ForkJoinPool.commonPool(), 0);
+    }
+
+    @Test
+    public void mergeSortedProducesSameResultAsMergeTest() {
+        Random random = new Random(2);
+        for (int i = 0; i < 2_000; i++) {
+            existingPrices.add(randomPrice(random, i * 10L));
+            incomingPrices.add(randomPrice(random, i * 10L));
+        }
+
+        Comparator<Price> order = Comparator.comparing(PriceGroupKey::of).thenComparingLong(Price::getBeginMillis);
+        List<Price> sortedExistingPrices = new ArrayList<>(PriceManager.merge(existingPrices, Collections.emptyList()));
+        sortedExistingPrices.sort(order);
+        List<Price> sortedIncomingPrices = new ArrayList<>(incomingPrices);
+        sortedIncomingPrices.sort(order);
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(sortedExistingPrices, sortedIncomingPrices));
+        mergedPrices.sort(order);
+
+        List<Price> streamedPrices = new ArrayList<>();
+        PriceManager.mergeSorted(sortedExistingPrices.stream(), sortedIncomingPrices.stream(), streamedPrices::add);
+
+        assertEquals(mergedPrices, streamedPrices);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeSortedUnsortedPricesTest() throws ParseException {
+        existingPrices.add(new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+
+        PriceManager.mergeSorted(existingPrices.iterator(), incomingPrices.iterator(), result::add);
+    }
+
+    @Test
+    public void mergeBatchesProducesSameResultAsMergeTest() {
+        Random random = new Random(3);
+        for (int i = 0; i < 2_000; i++) {
+            existingPrices.add(randomPrice(random, i * 10L));
+            incomingPrices.add(randomPrice(random, i * 10L));
+        }
+        incomingPrices.add(new Price("price_1", 1, 1, 0L, 100L, null));
+
+        Comparator<Price> order = Comparator.comparing(PriceGroupKey::of).thenComparingLong(Price::getBeginMillis);
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+        mergedPrices.sort(order);
+
+        List<Price> batchPrices = PriceManager.mergeBatches(PriceBatch.of(existingPrices), PriceBatch.of(incomingPrices)).toPrices();
+        batchPrices.sort(order);
+
+        assertEquals(mergedPrices, batchPrices);
+    }
+
+    @Test
+    public void mergeBatchesWithNegativeNumbersTest() {
+        int[] numbers = {ProductCodeDictionary.MIN_PACKED_NUMBER, -2, -1, 0, 1, ProductCodeDictionary.MAX_PACKED_NUMBER};
+        Random random = new Random(29);
+        for (int i = 0; i < 2_000; i++) {
+            long begin = i * 10L + random.nextInt(100);
+            existingPrices.add(new Price("price_" + random.nextInt(5), numbers[random.nextInt(numbers.length)],
+                    numbers[random.nextInt(numbers.length)], begin, begin + 1 + random.nextInt(50), (long) random.nextInt(3)));
+            begin = i * 10L + random.nextInt(100);
+            incomingPrices.add(new Price("price_" + random.nextInt(5), numbers[random.nextInt(numbers.length)],
+                    numbers[random.nextInt(numbers.length)], begin, begin + 1 + random.nextInt(50), (long) random.nextInt(3)));
+        }
+
+        Comparator<Price> order = Comparator.comparing(PriceGroupKey::of).thenComparingLong(Price::getBeginMillis);
+
+        List<Price> mergedPrices = new ArrayList<>(PriceManager.merge(existingPrices, incomingPrices));
+        mergedPrices.sort(order);
+
+        List<Price> batchPrices = PriceManager.mergeBatches(PriceBatch.of(existingPrices), PriceBatch.of(incomingPrices)).toPrices();
+        batchPrices.sort(order);
+
+        assertEquals(mergedPrices, batchPrices);
+    }
+
+    @Test
+    public void packedGroupKeyOrderTest() {
+        int[] numbers = {ProductCodeDictionary.MIN_PACKED_NUMBER, -2, -1, 0, 1, ProductCodeDictionary.MAX_PACKED_NUMBER};
+        long previousKey = -1;
+        for (int productId : new int[]{0, 1, Integer.MAX_VALUE}) {
+            for (int number : numbers) {
+                for (int depart : numbers) {
+                    long key = ProductCodeDictionary.pack(productId, number, depart);
+                    assertEquals(productId, ProductCodeDictionary.productId(key));
+                    assertEquals(number, ProductCodeDictionary.number(key));
+                    assertEquals(depart, ProductCodeDictionary.depart(key));
+                    assertTrue(key > previousKey);
+                    previousKey = key;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergeBatchesWithSharedDictionaryTest() {
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            existingPrices.add(randomPrice(random, i * 10L));
+            incomingPrices.add(randomPrice(random, i * 10L));
+        }
+
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        PriceBatch sharedResult = PriceManager.mergeBatches(PriceBatch.of(existingPrices, dictionary), PriceBatch.of(incomingPrices, dictionary));
+        PriceBatch ownResult = PriceManager.mergeBatches(PriceBatch.of(existingPrices), PriceBatch.of(incomingPrices));
+
+        assertSame(dictionary, sharedResult.getDictionary());
+        assertEquals(ownResult.toPrices(), sharedResult.toPrices());
+    }
+
+    @Test
+    public void mergeAllProducesSameResultAsSequentialMergeTest() {
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++)
+            existingPrices.add(randomPrice(random, i * 10L));
+
+        List<List<Price>> incomingBatches = new ArrayList<>();
+        for (int batch = 0; batch < 20; batch++) {
+            List<Price> prices = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(50); i++)
+                prices.add(randomPrice(random, random.nextInt(3000)));
+            incomingBatches.add(prices);
+        }
+        incomingBatches.add(5, Collections.emptyList());
+
+        Collection<Price> sequentialPrices = existingPrices;
+        for (List<Price> incomingBatch : incomingBatches)
+            if (!incomingBatch.isEmpty())
+                sequentialPrices = PriceManager.merge(sequentialPrices, incomingBatch);
+
+        assertEquals(new ArrayList<>(sequentialPrices), new ArrayList<>(PriceManager.mergeAll(existingPrices, incomingBatches)));
+        assertEquals(new ArrayList<>(PriceManager.merge(incomingBatches.get(0), incomingBatches.get(1))),
+                new ArrayList<>(PriceManager.mergeAll(null, incomingBatches.subList(0, 2))));
+        assertEquals(existingPrices, PriceManager.mergeAll(existingPrices, Collections.singletonList(null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeAllWithoutPricesTest() {
+        PriceManager.mergeAll(Collections.emptyList(), Arrays.asList(null, Collections.emptyList()));
+    }
+
+    @Test
+    public void compactTest() throws ParseException {
+        Price first = new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("12.10.2019 00:00:00"), 5000L);
+        first.setId(1L);
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("12.10.2019 00:00:00"), dateFormat.parse("13.10.2019 00:00:00"), 5000L));
+        Price other = new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 100L);
+        existingPrices.add(other);
+        existingPrices.add(first);
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("13.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 6000L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("18.10.2019 00:00:00"), dateFormat.parse("25.10.2019 00:00:00"), 6000L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("19.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 6000L));
+
+        CompactionResult result = PriceManager.compact(existingPrices);
+
+        List<Price> expectedPrices = new ArrayList<>();
+        expectedPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("13.10.2019 00:00:00"), 5000L));
+        expectedPrices.add(new Price("price_1", 1, 1, dateFormat.parse("13.10.2019 00:00:00"), dateFormat.parse("25.10.2019 00:00:00"), 6000L));
+        expectedPrices.add(other);
+
+        assertEquals(expectedPrices, result.getPrices());
+        assertEquals(3, result.getRemovedCount());
+        assertEquals(Long.valueOf(1L), result.getPrices().get(0).getId());
+        assertSame(other, result.getPrices().get(2));
+        assertEquals(dateFormat.parse("12.10.2019 00:00:00"), first.getEnd());
+        assertEquals(0, PriceManager.compact(result.getPrices()).getRemovedCount());
+    }
+
+    @Test
+    public void mergeAndCompactTest() throws ParseException {
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 110L));
+        incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 100L));
+
+        CompactionResult result = PriceManager.mergeAndCompact(existingPrices, incomingPrices);
+
+        assertEquals(Collections.singletonList(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 100L)),
+                result.getPrices());
+        assertEquals(1, result.getRemovedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compactIntersectingPricesTest() {
+        existingPrices.add(new Price("price_1", 1, 1, 0L, 100L, 10L));
+        existingPrices.add(new Price("price_1", 1, 1, 50L, 150L, 20L));
+        PriceManager.compact(existingPrices);
+    }
+
+    @Test
+    public void mergeImmutablePricesTest() {
+        Random random = new Random(23);
+        List<Price> existing = new ArrayList<>();
+        List<Price> incoming = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            Price price = randomPrice(random, i * 10L);
+            price.setId((long) i);
+            existing.add(ImmutablePrice.of(price));
+            incoming.add(ImmutablePrice.of(randomPrice(random, i * 10L)));
+        }
+        existingPrices.addAll(existing);
+        incomingPrices.addAll(incoming);
+
+        Collection<Price> mergedPrices = PriceManager.merge(existingPrices, incomingPrices);
+        assertImmutable(mergedPrices);
+        assertImmutable(PriceManager.parallelMerge(existingPrices, incomingPrices, ForkJoinPool.commonPool(), 16));
+        assertImmutable(PriceManager.mergeAll(existingPrices, Arrays.asList(incoming.subList(0, 500), incoming.subList(500, 1_000))));
+        assertImmutable(new BufferedPriceMerger().merge(existingPrices, incomingPrices));
+        assertImmutable(PriceManager.compact(mergedPrices).getPrices());
+
+        PriceStore store = new PriceStore(existingPrices);
+        store.apply(incomingPrices);
+        assertImmutable(store.getPrices());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutablePriceSetterTest() {
+        ImmutablePrice price = ImmutablePrice.of(new Price("price_1", 1, 1, 0L, 100L, 10L));
+        assertEquals(new Price("price_1", 1, 1, 0L, 100L, 10L), price);
+        price.setEndMillis(200L);
+    }
+
+    private Price price(Long id, String begin, String end, Long value) throws ParseException {
+        return price("price_1", id, begin, end, value);
+    }
+
+    private Price price(String productCode, Long id, String begin, String end, Long value) throws ParseException {
+        Price price = new Price(productCode, 1, 1, dateFormat.parse(begin), dateFormat.parse(end), value);
+        price.setId(id);
+        return price;
+    }
+
+    /**
+     * Orders the prices like the merge does: group by group in the order the groups first appear
+     * in the existing and then in the incoming prices, each group sorted by the start date.
+     */
+    private List<Price> inGroupOrder(Collection<Price> prices) {
+        Map<PriceGroupKey, Integer> groupOrder = new HashMap<>();
+        for (Price price : existingPrices)
+            groupOrder.putIfAbsent(PriceGroupKey.of(price), groupOrder.size());
+        for (Price price : incomingPrices)
+            groupOrder.putIfAbsent(PriceGroupKey.of(price), groupOrder.size());
+
+        List<Price> result = new ArrayList<>(prices);
+        result.sort(Comparator.comparing((Price price) -> groupOrder.get(PriceGroupKey.of(price)))
+                .thenComparingLong(Price::getBeginMillis));
+        return result;
+    }
+
+    private static List<String> productCodes(Collection<Price> prices) {
+        List<String> productCodes = new ArrayList<>(prices.size());
+        for (Price price : prices)
+            productCodes.add(price.getProductCode());
+        return productCodes;
+    }
+
+    private static List<Long> ids(Collection<Price> prices) {
+        List<Long> ids = new ArrayList<>(prices.size());
+        for (Price price : prices)
+            ids.add(price.getId());
+        return ids;
+    }
+
+    private static void assertImmutable(Collection<Price> prices) {
+        for (Price price : prices)
+            assertTrue(price instanceof ImmutablePrice);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeBatchesDepartOutOfRangeTest() {
+        PriceBatch batch = new PriceBatch();
+        batch.add("price_1", 1, ProductCodeDictionary.MAX_PACKED_NUMBER + 1, 0L, 100L, 10L);
+        PriceManager.mergeBatches(batch, batch);
+    }
+
+    @Test
+    public void mergeWithMetricsTest() throws ParseException {
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 110L));
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("20.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 120L));
+        existingPrices.add(new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 200L));
+        incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("25.10.2019 00:00:00"), 130L));
+        incomingPrices.add(new Price("price_2", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 210L));
+        incomingPrices.add(new Price("price_2", 1, 1, dateFormat.parse("25.10.2019 00:00:00"), dateFormat.parse("05.11.2019 00:00:00"), 200L));
+
+        MergeStatistics statistics = new MergeStatistics();
+        PriceManager.merge(existingPrices, incomingPrices, statistics);
+
+        assertEquals(1, statistics.getMergeCount());
+        assertEquals(2, statistics.getGroupCount());
+        assertEquals(3, statistics.getIncomingPriceCount());
+        assertEquals(2, statistics.getInsertCount());
+        assertEquals(1, statistics.getExtendCount());
+        assertEquals(0, statistics.getCoalesceCount());
+        assertEquals(1, statistics.getSplitCount());
+        assertEquals(2, statistics.getCutCount());
+        assertEquals(1, statistics.getCoverCount());
+        assertEquals(1, statistics.getGroupSizeHistogram()[1]);
+        assertEquals(1, statistics.getGroupSizeHistogram()[2]);
+    }
+
+    @Test
+    public void mergeStatisticsMBeanTest() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.prigozhaev:type=MergeStatistics");
+        MergeStatistics statistics = new MergeStatistics();
+
+        server.registerMBean(statistics, name);
+        try {
+            existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("10.10.2019 00:00:00"), 100L));
+            incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("05.10.2019 00:00:00"), dateFormat.parse("15.10.2019 00:00:00"), 100L));
+            PriceManager.merge(existingPrices, incomingPrices, statistics);
+
+            assertEquals(1L, server.getAttribute(name, "ExtendCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
 }
\ No newline at end of file
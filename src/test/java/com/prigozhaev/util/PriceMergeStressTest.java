@@ -0,0 +1,401 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceBatch;
+import com.prigozhaev.model.PriceGroupKey;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.prigozhaev.model.Price.PriceActionPeriod.doesNotIntersectionWith;
+import static com.prigozhaev.model.Price.PriceActionPeriod.haveIntersectionOnTheLeftWith;
+import static com.prigozhaev.model.Price.PriceActionPeriod.haveIntersectionOnTheRightWith;
+import static com.prigozhaev.model.Price.PriceActionPeriod.isInsideIn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Differential stress test of the merge implementations.
+ * <p>
+ * Random price groups are merged by the original merge, kept verbatim in {@link OriginalPriceManager},
+ * and by every optimised, parallel and streaming implementation, and the results are compared.
+ * The original merge is run on inputs normalised where its semantics differ on purpose, and the
+ * differences are asserted by separate tests:
+ * <ul>
+ * <li>it fails on incoming prices without a value, so it merges them with a placeholder value;</li>
+ * <li>it leaves zero-length fragments behind where prices with different values share a boundary,
+ * which are dropped from its result;</li>
+ * <li>a price it extends over an existing price of the same value keeps the price action period it was
+ * constructed with, so later incoming prices of the group miss the extended part; it is therefore given
+ * the incoming prices of a group one by one, every time on fresh copies of the group;</li>
+ * <li>it leaves the prices it derives from existing ones without an id, while the implementations keep
+ * the id of the existing price, so the ids are compared by their own rule.</li>
+ * </ul>
+ * <p>
+ * The size is set by the {@code price.stress.groups} system property. With the
+ * {@code price.stress.report} system property set, the wall time and the peak heap usage
+ * of every implementation are measured and printed as well, e.g.
+ * {@code mvn test -Dtest=PriceMergeStressTest -Dprice.stress.groups=1000000 -Dprice.stress.report=true}.
+ */
+
+public class PriceMergeStressTest {
+
+    private static final int GROUPS = Integer.getInteger("price.stress.groups", 5_000);
+
+    private static final long SEED = Long.getLong("price.stress.seed", 42L);
+
+    private static final boolean REPORT = Boolean.getBoolean("price.stress.report");
+
+    private static final Long[] VALUES = {100L, 200L, 300L, null};
+
+    /**
+     * The value the original merge gets instead of no value.
+     */
+    private static final Long NO_VALUE = -1L;
+
+    private static final Comparator<Price> ORDER = Comparator.comparing(PriceGroupKey::of)
+            .thenComparingLong(Price::getBeginMillis);
+
+    /**
+     * The position of an incoming price relative to an existing price of its group.
+     */
+    private enum Shape {
+        DISJOINT, INSIDE_EXISTING, ACROSS_EXISTING_BEGIN, ACROSS_EXISTING_END, COVERS_EXISTING
+    }
+
+    private static List<Price> existingPrices;
+    private static List<Price> incomingPrices;
+    private static List<Price> expectedPrices;
+    private static Map<PriceGroupKey, Set<Long>> existingIds;
+    private static final Map<Shape, Long> sameValueShapes = new EnumMap<>(Shape.class);
+    private static final Map<Shape, Long> otherValueShapes = new EnumMap<>(Shape.class);
+    private static long zeroLengthPrices;
+
+    @BeforeClass
+    public static void setUp() {
+        generate(new Random(SEED));
+        existingIds = new HashMap<>();
+        for (Price price : existingPrices)
+            existingIds.computeIfAbsent(PriceGroupKey.of(price), key -> new HashSet<>()).add(price.getId());
+        expectedPrices = measure("original", () -> originalMerge(existingPrices, incomingPrices));
+    }
+
+    @Test
+    public void everyShapeIsCoveredTest() {
+        for (Shape shape : Shape.values()) {
+            assertTrue("Shape is not generated with the same value: " + shape, sameValueShapes.getOrDefault(shape, 0L) > 0);
+            assertTrue("Shape is not generated with another value: " + shape, otherValueShapes.getOrDefault(shape, 0L) > 0);
+        }
+    }
+
+    @Test
+    public void originalMergeLeavesZeroLengthPricesTest() {
+        assertTrue(zeroLengthPrices > 0);
+        for (Price price : PriceManager.merge(existingPrices, incomingPrices))
+            assertTrue(price.getEndMillis() > price.getBeginMillis());
+    }
+
+    @Test
+    public void originalMergeMissesExtendedPeriodTest() {
+        List<Price> existing = new ArrayList<>();
+        existing.add(new Price("product", 1, 1, 0L, 10L, 100L));
+        List<Price> incoming = new ArrayList<>();
+        incoming.add(new Price("product", 1, 1, 5L, 15L, 100L));
+        incoming.add(new Price("product", 1, 1, 2L, 4L, 200L));
+
+        // the extended price keeps the period [5, 15), so the second price is put over it
+        List<Price> originalPrices = OriginalPriceManager.merge(existing, incoming);
+        assertEquals(new Price("product", 1, 1, 0L, 15L, 100L), originalPrices.get(0));
+        assertEquals(incoming.get(1), originalPrices.get(1));
+        assertEquals(2, originalPrices.size());
+
+        List<Price> expected = new ArrayList<>();
+        expected.add(new Price("product", 1, 1, 0L, 2L, 100L));
+        expected.add(incoming.get(1));
+        expected.add(new Price("product", 1, 1, 4L, 15L, 100L));
+        assertEquals(expected, new ArrayList<>(PriceManager.merge(existing, incoming)));
+        assertEquals(expected, originalMerge(existing, incoming));
+    }
+
+    @Test
+    public void mergeTest() {
+        assertSame(measure("merge", () -> PriceManager.merge(existingPrices, incomingPrices)));
+    }
+
+    @Test
+    public void parallelMergeTest() {
+        assertSame(measure("parallelMerge", () -> PriceManager.parallelMerge(existingPrices, incomingPrices)));
+    }
+
+    @Test
+    public void bufferedMergeTest() {
+        BufferedPriceMerger merger = new BufferedPriceMerger();
+        assertSame(measure("bufferedMerge", () -> merger.merge(existingPrices, incomingPrices)));
+    }
+
+    @Test
+    public void mergeAllTest() {
+        List<List<Price>> incomingBatches = new ArrayList<>();
+        for (int from = 0; from < incomingPrices.size(); from += 1_000)
+            incomingBatches.add(incomingPrices.subList(from, Math.min(from + 1_000, incomingPrices.size())));
+        assertSame(measure("mergeAll", () -> PriceManager.mergeAll(existingPrices, incomingBatches)));
+    }
+
+    @Test
+    public void mergeSortedTest() {
+        List<Price> sortedExisting = sortedByGroup(existingPrices);
+        List<Price> sortedIncoming = sortedByGroup(incomingPrices);
+        assertEquivalent(measure("mergeSorted", () -> {
+            List<Price> result = new ArrayList<>();
+            PriceManager.mergeSorted(sortedExisting.iterator(), sortedIncoming.iterator(), result::add);
+            return result;
+        }));
+    }
+
+    @Test
+    public void mergeBatchesTest() {
+        PriceBatch existingBatch = PriceBatch.of(existingPrices);
+        PriceBatch incomingBatch = PriceBatch.of(incomingPrices);
+        assertEquivalent(measure("mergeBatches", () -> PriceManager.mergeBatches(existingBatch, incomingBatch).toPrices()));
+    }
+
+    @Test
+    public void priceStoreTest() {
+        assertEquivalent(measure("priceStore", () -> {
+            PriceStore store = new PriceStore(existingPrices);
+            store.apply(incomingPrices);
+            return store.getPrices();
+        }));
+    }
+
+    /**
+     * Merges the prices by the original merge, normalised where its semantics differ on purpose:
+     * every incoming price is merged into fresh copies of the current prices of its group,
+     * the placeholder value stands in for no value, and zero-length prices are dropped.
+     * The groups come in the order of the merge, each sorted by the start date.
+     */
+    private static List<Price> originalMerge(List<Price> existing, List<Price> incoming) {
+        Map<PriceGroupKey, List<Price>> groups = new LinkedHashMap<>();
+        for (Price price : existing)
+            groups.computeIfAbsent(PriceGroupKey.of(price), key -> new ArrayList<>()).add(withValue(price, NO_VALUE));
+
+        for (Price price : incoming) {
+            PriceGroupKey key = PriceGroupKey.of(price);
+            List<Price> group = groups.computeIfAbsent(key, groupKey -> new ArrayList<>());
+            count(group, price);
+            Price incomingPrice = withValue(price, NO_VALUE);
+            groups.put(key, group.isEmpty() ? new ArrayList<>(Collections.singletonList(incomingPrice))
+                    : OriginalPriceManager.merge(group, Collections.singletonList(incomingPrice)));
+        }
+
+        List<Price> result = new ArrayList<>();
+        for (List<Price> group : groups.values()) {
+            group.sort(Comparator.comparingLong(Price::getBeginMillis));
+            for (Price price : group) {
+                if (price.getEndMillis() == price.getBeginMillis())
+                    zeroLengthPrices++;
+                else
+                    result.add(NO_VALUE.equals(price.getValue()) ? withValue(price, null) : price);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the price with the value, or the price itself if it has a value.
+     */
+    private static Price withValue(Price price, Long value) {
+        if (price.getValue() != null && value != null)
+            return price;
+        Price copy = new Price(price.getProductCode(), price.getNumber(), price.getDepart(),
+                price.getBeginMillis(), price.getEndMillis(), value);
+        copy.setId(price.getId());
+        return copy;
+    }
+
+    /**
+     * Counts the positions of the incoming price relative to the current prices of its group.
+     */
+    private static void count(List<Price> group, Price incomingPrice) {
+        long begin = incomingPrice.getBeginMillis();
+        long end = incomingPrice.getEndMillis();
+        for (Price existingPrice : group) {
+            long existingBegin = existingPrice.getBeginMillis();
+            long existingEnd = existingPrice.getEndMillis();
+            if (existingEnd == existingBegin)
+                continue;
+
+            Shape shape;
+            if (doesNotIntersectionWith(begin, end, existingBegin, existingEnd))
+                shape = Shape.DISJOINT;
+            else if (isInsideIn(begin, end, existingBegin, existingEnd))
+                shape = Shape.INSIDE_EXISTING;
+            else if (haveIntersectionOnTheRightWith(begin, end, existingBegin, existingEnd))
+                shape = Shape.ACROSS_EXISTING_BEGIN;
+            else if (haveIntersectionOnTheLeftWith(begin, end, existingBegin, existingEnd))
+                shape = Shape.ACROSS_EXISTING_END;
+            else
+                shape = Shape.COVERS_EXISTING;
+
+            Long value = incomingPrice.getValue() == null ? NO_VALUE : incomingPrice.getValue();
+            (value.equals(existingPrice.getValue()) ? sameValueShapes : otherValueShapes).merge(shape, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Generates groups of adjacent or separated existing prices and incoming prices placed
+     * relative to them: inside, across the left or the right border, over several prices,
+     * exactly over one, next to one or far from all of them, with the same or another value.
+     */
+    private static void generate(Random random) {
+        existingPrices = new ArrayList<>();
+        incomingPrices = new ArrayList<>();
+        long id = 0;
+
+        for (int group = 0; group < GROUPS; group++) {
+            String productCode = "product_" + group / 4;
+            int number = 1 + group % 2;
+            int depart = 1 + group / 2 % 2;
+
+            List<Price> groupPrices = new ArrayList<>();
+            int existingCount = group % 10 == 9 ? 0 : 1 + random.nextInt(8);
+            long time = random.nextInt(1_000);
+            for (int i = 0; i < existingCount; i++) {
+                time += random.nextInt(3) == 0 ? random.nextInt(100) : 0;
+                long length = 1 + random.nextInt(200);
+                Price price = new Price(productCode, number, depart, time, time + length, VALUES[random.nextInt(VALUES.length)]);
+                price.setId(++id);
+                groupPrices.add(price);
+                time += length;
+            }
+            existingPrices.addAll(groupPrices);
+
+            int incomingCount = group % 10 == 8 ? 0 : 1 + random.nextInt(4);
+            for (int i = 0; i < incomingCount; i++) {
+                long begin;
+                long end;
+                Long value = VALUES[random.nextInt(VALUES.length)];
+                if (groupPrices.isEmpty()) {
+                    begin = random.nextInt(2_000);
+                    end = begin + 1 + random.nextInt(200);
+                } else {
+                    Price target = groupPrices.get(random.nextInt(groupPrices.size()));
+                    long targetBegin = target.getBeginMillis();
+                    long targetEnd = target.getEndMillis();
+                    long length = targetEnd - targetBegin;
+                    switch (random.nextInt(7)) {
+                        case 0:
+                            begin = targetBegin + random.nextInt((int) length);
+                            end = begin + 1 + random.nextInt((int) (targetEnd - begin));
+                            break;
+                        case 1:
+                            begin = targetBegin - 1 - random.nextInt(100);
+                            end = targetBegin + 1 + random.nextInt((int) length);
+                            break;
+                        case 2:
+                            begin = targetBegin + random.nextInt((int) length);
+                            end = targetEnd + 1 + random.nextInt(100);
+                            break;
+                        case 3:
+                            begin = targetBegin - random.nextInt(300);
+                            end = targetEnd + random.nextInt(300);
+                            break;
+                        case 4:
+                            begin = targetBegin;
+                            end = targetEnd;
+                            break;
+                        case 5:
+                            begin = targetEnd;
+                            end = begin + 1 + random.nextInt(100);
+                            break;
+                        default:
+                            begin = time + 1 + random.nextInt(1_000);
+                            end = begin + 1 + random.nextInt(100);
+                            break;
+                    }
+                    if (random.nextInt(3) == 0)
+                        value = target.getValue();
+                }
+                incomingPrices.add(new Price(productCode, number, depart, begin, end, value));
+            }
+        }
+    }
+
+    private static <T extends Collection<Price>> T measure(String name, Supplier<T> merge) {
+        if (!REPORT)
+            return merge.get();
+
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long start = System.nanoTime();
+        T result = merge.get();
+        long elapsed = System.nanoTime() - start;
+
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        System.out.printf("%-14s %,10d groups %,10d prices %,8d ms %,8d MB peak heap%n", name, GROUPS,
+                result.size(), TimeUnit.NANOSECONDS.toMillis(elapsed), peakHeap >> 20);
+        return result;
+    }
+
+    private static void assertSame(Collection<Price> actualPrices) {
+        List<Price> actual = new ArrayList<>(actualPrices);
+        assertEquals(expectedPrices, actual);
+        assertIds(expectedPrices, actual);
+    }
+
+    private static void assertEquivalent(Collection<Price> actualPrices) {
+        List<Price> expected = sortedByGroup(expectedPrices);
+        expected.sort(ORDER);
+        List<Price> actual = new ArrayList<>(actualPrices);
+        actual.sort(ORDER);
+        assertEquals(expected, actual);
+        assertIds(expected, actual);
+    }
+
+    /**
+     * Checks the ids of the prices matching the prices of the original merge: a price the original merge
+     * kept with its id has the same id, any other price has no id or the id of an existing price of its group,
+     * and no id is used twice.
+     */
+    private static void assertIds(List<Price> expected, List<Price> actual) {
+        Set<Long> usedIds = new HashSet<>();
+        for (int i = 0; i < actual.size(); i++) {
+            Price price = actual.get(i);
+            Long id = price.getId();
+            if (expected.get(i).getId() != null)
+                assertEquals(price.toString(), expected.get(i).getId(), id);
+            else if (id != null)
+                assertTrue(price.toString(), existingIds.get(PriceGroupKey.of(price)).contains(id));
+            assertTrue("Id is used twice: " + price, id == null || usedIds.add(id));
+        }
+    }
+
+    private static List<Price> sortedByGroup(List<Price> prices) {
+        List<Price> sorted = new ArrayList<>(prices);
+        sorted.sort(Comparator.comparing(PriceGroupKey::of));
+        return sorted;
+    }
+
+}
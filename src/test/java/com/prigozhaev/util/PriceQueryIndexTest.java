@@ -0,0 +1,162 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriceQueryIndexTest {
+
+    private static final Comparator<Price> ORDER = Comparator.comparing(Price::getProductCode)
+            .thenComparingInt(Price::getNumber)
+            .thenComparingInt(Price::getDepart)
+            .thenComparingLong(Price::getBeginMillis);
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    @Test
+    public void findByDepartTest() throws ParseException {
+        List<Price> prices = new ArrayList<>();
+        prices.add(price("price_1", 1, "01.10.2019 00:00:00", "10.10.2019 00:00:00"));
+        prices.add(price("price_1", 1, "10.10.2019 00:00:00", "01.01.2020 00:00:00"));
+        prices.add(price("price_2", 1, "05.10.2019 00:00:00", "06.10.2019 00:00:00"));
+        prices.add(price("price_2", 2, "05.10.2019 00:00:00", "06.10.2019 00:00:00"));
+
+        PriceQueryIndex index = PriceQueryIndex.build(prices);
+
+        assertEquals(sorted(prices.subList(0, 3)),
+                sorted(index.findByDepart(1, dateFormat.parse("05.10.2019 12:00:00"), dateFormat.parse("15.10.2019 00:00:00")).collect(Collectors.toList())));
+        assertEquals(Collections.singletonList(prices.get(1)),
+                index.findByDepart(1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("11.10.2019 00:00:00")).collect(Collectors.toList()));
+        assertEquals(0, index.findByDepart(3, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("01.01.2020 00:00:00")).count());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void findByProductsTest() throws ParseException {
+        List<Price> prices = new ArrayList<>();
+        prices.add(price("price_1", 1, "01.10.2019 00:00:00", "10.10.2019 00:00:00"));
+        prices.add(price("price_1", 2, "01.09.2019 00:00:00", "01.01.2020 00:00:00"));
+        prices.add(price("price_2", 1, "05.10.2019 00:00:00", "06.10.2019 00:00:00"));
+        prices.add(price("price_3", 1, "05.10.2019 00:00:00", "06.10.2019 00:00:00"));
+
+        PriceQueryIndex index = PriceQueryIndex.build(prices);
+
+        assertEquals(sorted(Arrays.asList(prices.get(0), prices.get(1), prices.get(2))),
+                sorted(index.findByProducts(Arrays.asList("price_1", "price_2", "price_4"),
+                        dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("08.10.2019 00:00:00")).collect(Collectors.toList())));
+        assertEquals(Collections.singletonList(prices.get(1)),
+                index.findByProducts(Collections.singletonList("price_1"),
+                        dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("11.10.2019 00:00:00")).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void queriesMatchLinearScanTest() {
+        Random random = new Random(17);
+        List<Price> prices = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            long begin = random.nextInt(100_000);
+            long length = random.nextInt(10) == 0 ? 1 + random.nextInt(50_000) : 1 + random.nextInt(500);
+            prices.add(new Price("price_" + random.nextInt(100), 1, random.nextInt(5), begin, begin + length, (long) i));
+        }
+
+        PriceQueryIndex index = PriceQueryIndex.build(prices, 100, 8);
+
+        for (int query = 0; query < 200; query++) {
+            long from = random.nextInt(110_000) - 5_000;
+            long to = from + random.nextInt(5_000);
+            int depart = random.nextInt(6);
+            Set<String> products = random.ints(10, 0, 120).mapToObj(i -> "price_" + i).collect(Collectors.toSet());
+
+            List<Price> byDepart = index.findByDepart(depart, from, to).collect(Collectors.toList());
+            assertEquals(sorted(prices.stream()
+                    .filter(price -> price.getDepart() == depart && price.getBeginMillis() < to && price.getEndMillis() > from)
+                    .collect(Collectors.toList())), sorted(byDepart));
+
+            List<Price> byProducts = index.findByProducts(products, from, to).collect(Collectors.toList());
+            assertEquals(sorted(prices.stream()
+                    .filter(price -> products.contains(price.getProductCode()) && price.getBeginMillis() < to && price.getEndMillis() > from)
+                    .collect(Collectors.toList())), sorted(byProducts));
+        }
+        assertEquals(0, index.findByDepart(1, 500, 500).count());
+    }
+
+    @Test
+    public void queryCostDoesNotGrowWithHistoryTest() {
+        // a week-long query in the middle of a history of 60-day prices, all in the overflow arrays
+        long day = TimeUnit.DAYS.toMillis(1);
+        long shortHistory = visitedPrices(100, day);
+        long longHistory = visitedPrices(100_000, day);
+
+        assertTrue("visited " + shortHistory + " prices", shortHistory <= 4);
+        assertEquals(shortHistory, longHistory);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPeriodTest() {
+        PriceQueryIndex.build(Collections.emptyList()).findByDepart(1, 10, 5);
+    }
+
+    /**
+     * Builds a history of consecutive 60-day prices of one product and returns
+     * how many prices a query of the week in the middle of it reads.
+     */
+    private static long visitedPrices(int historyLength, long day) {
+        List<Price> prices = new ArrayList<>();
+        AtomicLong visits = new AtomicLong();
+        for (int i = 0; i < historyLength; i++)
+            prices.add(new CountingPrice(i * 60 * day, (i + 1) * 60 * day, visits));
+        PriceQueryIndex index = PriceQueryIndex.build(prices);
+
+        long from = historyLength / 2 * 60 * day + 10 * day;
+        visits.set(0);
+        assertEquals(1, index.findByDepart(1, from, from + 7 * day).count());
+        assertEquals(1, index.findByProducts(Collections.singletonList("price_1"), from, from + 7 * day).count());
+        return visits.get();
+    }
+
+    private static List<Price> sorted(List<Price> prices) {
+        List<Price> result = new ArrayList<>(prices);
+        result.sort(ORDER.thenComparing(Price::getValue));
+        return result;
+    }
+
+    private Price price(String productCode, int depart, String begin, String end) throws ParseException {
+        return new Price(productCode, 1, depart, dateFormat.parse(begin), dateFormat.parse(end), 100L);
+    }
+
+    /**
+     * A price counting how many times its end time is read.
+     */
+    private static final class CountingPrice extends Price {
+
+        private final AtomicLong visits;
+
+        private CountingPrice(long beginMillis, long endMillis, AtomicLong visits) {
+            super("price_1", 1, 1, beginMillis, endMillis, 100L);
+            this.visits = visits;
+        }
+
+        @Override
+        public long getEndMillis() {
+            visits.incrementAndGet();
+            return super.getEndMillis();
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceGroupKey;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PriceSnapshotPublisherTest {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    @Test
+    public void publishTest() throws ParseException {
+        List<Price> existingPrices = new ArrayList<>();
+        existingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 100L));
+        existingPrices.add(new Price("price_2", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 200L));
+
+        List<Price> incomingPrices = new ArrayList<>();
+        incomingPrices.add(new Price("price_1", 1, 1, dateFormat.parse("10.10.2019 00:00:00"), dateFormat.parse("20.10.2019 00:00:00"), 110L));
+
+        PriceSnapshotPublisher publisher = new PriceSnapshotPublisher(PriceSnapshot.of(existingPrices));
+        PriceSnapshot previous = publisher.current();
+
+        PriceSnapshot published = publisher.publish(incomingPrices);
+
+        assertSame(published, publisher.current());
+        assertEquals(1, published.getVersion());
+        assertEquals(4, published.size());
+        assertEquals(sorted(PriceManager.merge(existingPrices, incomingPrices)), sorted(published.getPrices()));
+        assertEquals(3, published.getPrices(new PriceGroupKey("price_1", 1, 1)).size());
+
+        assertEquals(sorted(existingPrices), sorted(previous.getPrices()));
+        assertSame(previous.getPrices(new PriceGroupKey("price_2", 1, 1)), published.getPrices(new PriceGroupKey("price_2", 1, 1)));
+        assertEquals(Long.valueOf(110L), published.getActivePriceIndex()
+                .activePrice("price_1", 1, 1, dateFormat.parse("15.10.2019 00:00:00")).getValue());
+        assertEquals(Long.valueOf(100L), previous.getActivePriceIndex()
+                .activePrice("price_1", 1, 1, dateFormat.parse("15.10.2019 00:00:00")).getValue());
+    }
+
+    @Test
+    public void publishToEmptySnapshotTest() throws ParseException {
+        PriceSnapshotPublisher publisher = new PriceSnapshotPublisher();
+
+        publisher.publish(Collections.singletonList(
+                new Price("price_1", 1, 1, dateFormat.parse("01.10.2019 00:00:00"), dateFormat.parse("31.10.2019 00:00:00"), 100L)));
+
+        assertEquals(1, publisher.current().size());
+        assertEquals(1, publisher.current().groupCount());
+    }
+
+    @Test
+    public void mergeSharesUntouchedGroupsTest() {
+        List<Price> existingPrices = new ArrayList<>();
+        for (int product = 0; product < 1_000; product++)
+            existingPrices.add(new Price("price_" + product, 1, 1, 0, 100, 100L));
+        PriceSnapshot snapshot = PriceSnapshot.of(existingPrices);
+
+        PriceSnapshot merged = snapshot.merge(Arrays.asList(
+                new Price("price_1", 1, 1, 50, 150, 110L),
+                new Price("price_1000", 1, 1, 0, 100, 100L)));
+
+        assertEquals(1_000, snapshot.groupCount());
+        assertEquals(1_001, merged.groupCount());
+        assertEquals(1_002, merged.size());
+        assertEquals(merged.size(), merged.getPrices().size());
+        assertEquals(sorted(PriceManager.merge(existingPrices, Arrays.asList(
+                new Price("price_1", 1, 1, 50, 150, 110L),
+                new Price("price_1000", 1, 1, 0, 100, 100L)))), sorted(merged.getPrices()));
+        for (int product = 2; product < 1_000; product++) {
+            PriceGroupKey key = new PriceGroupKey("price_" + product, 1, 1);
+            assertSame(snapshot.getPrices(key), merged.getPrices(key));
+        }
+        assertEquals(1, snapshot.getPrices(new PriceGroupKey("price_1", 1, 1)).size());
+        assertEquals(2, merged.getPrices(new PriceGroupKey("price_1", 1, 1)).size());
+    }
+
+    private static List<Price> sorted(Collection<Price> prices) {
+        List<Price> result = new ArrayList<>(prices);
+        result.sort(Comparator.comparing(PriceGroupKey::of).thenComparingLong(Price::getBeginMillis));
+        return result;
+    }
+
+}
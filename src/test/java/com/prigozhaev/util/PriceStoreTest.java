@@ -0,0 +1,150 @@
+package com.prigozhaev.util;
+
+import com.prigozhaev.model.Price;
+import com.prigozhaev.model.PriceChangeset;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriceStoreTest {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    private List<Price> existingPrices;
+
+    @Before
+    public void setUp() throws ParseException {
+        existingPrices = new ArrayList<>();
+        existingPrices.add(price(1L, "01.10.2019 00:00:00", "10.10.2019 00:00:00", 100L));
+        existingPrices.add(price(2L, "10.10.2019 00:00:00", "20.10.2019 00:00:00", 110L));
+        existingPrices.add(price(3L, "20.10.2019 00:00:00", "31.10.2019 00:00:00", 120L));
+    }
+
+    @Test
+    public void applyShortensAndRemovesPricesTest() throws ParseException {
+        PriceStore store = new PriceStore(existingPrices);
+
+        PriceChangeset changeset = store.apply(Collections.singletonList(
+                price(null, "05.10.2019 00:00:00", "25.10.2019 00:00:00", 130L)));
+
+        assertEquals(Collections.singletonList(price(null, "05.10.2019 00:00:00", "25.10.2019 00:00:00", 130L)), changeset.getInserted());
+        assertEquals(2, changeset.getUpdated().size());
+        assertEquals(price(null, "01.10.2019 00:00:00", "05.10.2019 00:00:00", 100L), changeset.getUpdated().get(0));
+        assertEquals(Long.valueOf(1L), changeset.getUpdated().get(0).getId());
+        assertEquals(price(null, "25.10.2019 00:00:00", "31.10.2019 00:00:00", 120L), changeset.getUpdated().get(1));
+        assertEquals(Long.valueOf(3L), changeset.getUpdated().get(1).getId());
+        assertEquals(Collections.singletonList(existingPrices.get(1)), changeset.getRemoved());
+        assertEquals(3, store.getPrices().size());
+    }
+
+    @Test
+    public void applySplitsPriceTest() throws ParseException {
+        PriceStore store = new PriceStore(existingPrices);
+
+        PriceChangeset changeset = store.apply(Collections.singletonList(
+                price(null, "12.10.2019 00:00:00", "15.10.2019 00:00:00", 130L)));
+
+        assertEquals(2, changeset.getInserted().size());
+        assertEquals(price(null, "12.10.2019 00:00:00", "15.10.2019 00:00:00", 130L), changeset.getInserted().get(0));
+        assertEquals(price(null, "15.10.2019 00:00:00", "20.10.2019 00:00:00", 110L), changeset.getInserted().get(1));
+        assertEquals(Collections.singletonList(price(null, "10.10.2019 00:00:00", "12.10.2019 00:00:00", 110L)), changeset.getUpdated());
+        assertEquals(Long.valueOf(2L), changeset.getUpdated().get(0).getId());
+        assertTrue(changeset.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void applyExtendsPriceTest() throws ParseException {
+        PriceStore store = new PriceStore(existingPrices);
+
+        PriceChangeset changeset = store.apply(Collections.singletonList(
+                price(null, "25.10.2019 00:00:00", "15.11.2019 00:00:00", 120L)));
+
+        assertTrue(changeset.getInserted().isEmpty());
+        assertEquals(Collections.singletonList(price(null, "20.10.2019 00:00:00", "15.11.2019 00:00:00", 120L)), changeset.getUpdated());
+        assertEquals(Long.valueOf(3L), changeset.getUpdated().get(0).getId());
+        assertTrue(changeset.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void applyFoldsChangesOfSeveralPricesTest() throws ParseException {
+        PriceStore store = new PriceStore(existingPrices);
+
+        List<Price> incomingPrices = new ArrayList<>();
+        incomingPrices.add(price(null, "05.10.2019 00:00:00", "15.10.2019 00:00:00", 130L));
+        incomingPrices.add(price(null, "01.10.2019 00:00:00", "20.10.2019 00:00:00", 140L));
+
+        PriceChangeset changeset = store.apply(incomingPrices);
+
+        assertEquals(Collections.singletonList(incomingPrices.get(1)), changeset.getInserted());
+        assertTrue(changeset.getUpdated().isEmpty());
+        assertEquals(existingPrices.subList(0, 2), changeset.getRemoved());
+    }
+
+    @Test
+    public void zeroLengthPricesAreRemovedTest() throws ParseException {
+        // the original merge left zero-length prices behind where prices with different values met
+        Price emptyPrice = price(4L, "31.10.2019 00:00:00", "31.10.2019 00:00:00", 100L);
+        existingPrices.add(1, emptyPrice);
+        PriceStore store = new PriceStore(existingPrices);
+
+        assertEquals(3, store.getPrices().size());
+
+        PriceChangeset changeset = store.apply(Collections.singletonList(
+                price(null, "01.11.2019 00:00:00", "10.11.2019 00:00:00", 130L)));
+
+        assertEquals(1, changeset.getInserted().size());
+        assertTrue(changeset.getUpdated().isEmpty());
+        assertEquals(Collections.singletonList(emptyPrice), changeset.getRemoved());
+        assertTrue(store.apply(existingPrices.subList(2, 4)).isEmpty());
+    }
+
+    @Test
+    public void assignIdsTest() throws ParseException {
+        PriceStore store = new PriceStore(existingPrices);
+        PriceChangeset changeset = store.apply(Collections.singletonList(
+                price(null, "12.10.2019 00:00:00", "15.10.2019 00:00:00", 130L)));
+
+        List<Price> storedPrices = new ArrayList<>();
+        for (Price price : changeset.getInserted())
+            storedPrices.add(price.withId(10L + storedPrices.size()));
+        store.assignIds(storedPrices);
+
+        // the tail of the split price is keyed by its new id from now on
+        changeset = store.apply(Collections.singletonList(price(null, "14.10.2019 00:00:00", "25.10.2019 00:00:00", 140L)));
+
+        assertEquals(1, changeset.getInserted().size());
+        assertEquals(price(null, "12.10.2019 00:00:00", "14.10.2019 00:00:00", 130L), changeset.getUpdated().get(0));
+        assertEquals(Long.valueOf(10L), changeset.getUpdated().get(0).getId());
+        assertEquals(Collections.singletonList(storedPrices.get(1)), changeset.getRemoved());
+        assertEquals(Long.valueOf(11L), changeset.getRemoved().get(0).getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void assignIdsToUnknownPriceTest() throws ParseException {
+        PriceStore store = new PriceStore(existingPrices);
+
+        store.assignIds(Collections.singletonList(price(10L, "12.10.2019 00:00:00", "15.10.2019 00:00:00", 130L)));
+    }
+
+    @Test
+    public void applySamePricesTest() {
+        PriceStore store = new PriceStore(existingPrices);
+
+        assertTrue(store.apply(existingPrices).isEmpty());
+    }
+
+    private Price price(Long id, String begin, String end, Long value) throws ParseException {
+        Price price = new Price("price_1", 1, 1, dateFormat.parse(begin), dateFormat.parse(end), value);
+        price.setId(id);
+        return price;
+    }
+
+}